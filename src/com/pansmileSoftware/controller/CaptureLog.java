@@ -0,0 +1,255 @@
+package com.pansmileSoftware.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps captured messages on disk, so the monitor could keep hours of traffic. The log is
+ * append-only and is written to memory-mapped segment files in a temporary directory. Each message is one compact
+ * record: the time since the previous record in nanoseconds, the number of the device and the length of
+ * the message as variable-length numbers, and then the raw bytes of the message. A record never crosses the end of
+ * a segment. Every <code>INDEX_INTERVAL</code>-th record is indexed by it's position and time, so any record is
+ * found by decoding a few records after the nearest indexed one, and the heap keeps only the index.
+ * A <code>CaptureLog</code> is used on the GUI thread only.
+ * @see MessageInfo
+ * @see com.pansmileSoftware.model.MonitorTableModel
+ */
+public class CaptureLog {
+    //The size of one segment file.
+    private static final int SEGMENT_SIZE = 16 << 20;
+    //The number of records between two indexed ones.
+    private static final int INDEX_INTERVAL = 128;
+    //The longest record header: three variable-length numbers.
+    private static final int MAX_HEADER = 10 + 5 + 5;
+
+    private final File directory;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<File> segmentFiles = new ArrayList<>();
+    //The end of each filled segment. The end of the last one is the write position.
+    private int[] segmentEnds = new int[16];
+    //The names of the devices and their numbers.
+    private final List<String> devices = new ArrayList<>();
+    private final Map<String, Integer> deviceIds = new HashMap<>();
+    //The position (the segment in the high half, the offset in the low half) and the time of indexed records.
+    private long[] indexPositions = new long[1024];
+    private long[] indexTimes = new long[1024];
+    private long size;
+    private long lastTime;
+    //The record after the last decoded one, so reading rows in order doesn't go back to the index.
+    private long cursorRow = -1;
+    private long cursorPosition;
+    private long cursorTime;
+
+    /**
+     * Creates an empty log in a new temporary directory.
+     * @throws IOException in case if the directory or the first segment can't be created.
+     */
+    public CaptureLog() throws IOException {
+        directory = Files.createTempDirectory("miditellmatch-capture").toFile();
+        directory.deleteOnExit();
+        addSegment();
+    }
+
+    /**
+     * Appends received message to the end of the log.
+     * @param info  a <code>MessageInfo</code> to append.
+     * @throws IOException in case if a new segment can't be created, for example if the disk is full.
+     */
+    public void append(MessageInfo info) throws IOException {
+        byte[] data = info.getData();
+        long time = info.getNanoTime();
+        int recordLength = MAX_HEADER + data.length;
+        if (recordLength > SEGMENT_SIZE) {
+            throw new IOException("The message is too long to capture: " + data.length + " bytes");
+        }
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        if (segment.remaining() < recordLength) {
+            //Closing the current segment at it's end.
+            segmentEnds[segments.size() - 1] = segment.position();
+            addSegment();
+            segment = segments.get(segments.size() - 1);
+        }
+        //Indexing every INDEX_INTERVAL-th record.
+        if (size % INDEX_INTERVAL == 0) {
+            int entry = (int) (size / INDEX_INTERVAL);
+            if (entry == indexPositions.length) {
+                indexPositions = Arrays.copyOf(indexPositions, entry * 2);
+                indexTimes = Arrays.copyOf(indexTimes, entry * 2);
+            }
+            indexPositions[entry] = ((long) (segments.size() - 1) << 32) | segment.position();
+            indexTimes[entry] = time;
+        }
+        //The first record of the log and each indexed record are counted from the indexed time.
+        long delta = size % INDEX_INTERVAL == 0 ? 0 : time - lastTime;
+        writeVarint(segment, (delta << 1) ^ (delta >> 63));
+        writeVarint(segment, getDeviceId(info.getDeviceAlignment()));
+        writeVarint(segment, data.length);
+        segment.put(data);
+        lastTime = time;
+        size++;
+    }
+
+    /**
+     * Reads the record with received number.
+     * @param row  the number of a record, counted from the first one.
+     * @return a <code>MessageInfo</code>, or null if there is no such record.
+     */
+    public MessageInfo read(long row) {
+        if (row < 0 || row >= size) {
+            return null;
+        }
+        long position;
+        long time;
+        long current;
+        //Continuing from the last read record if it's a little before the required one.
+        if (cursorRow >= 0 && cursorRow <= row && row - cursorRow < INDEX_INTERVAL) {
+            position = cursorPosition;
+            time = cursorTime;
+            current = cursorRow;
+        } else {
+            int entry = (int) (row / INDEX_INTERVAL);
+            position = indexPositions[entry];
+            time = indexTimes[entry];
+            current = (long) entry * INDEX_INTERVAL;
+        }
+        while (true) {
+            int segmentNumber = (int) (position >>> 32);
+            ByteBuffer segment = segments.get(segmentNumber).duplicate();
+            int offset = (int) position;
+            if (segmentNumber < segments.size() - 1 && offset == segmentEnds[segmentNumber]) {
+                //Going to the beginning of the next segment.
+                position = (long) (segmentNumber + 1) << 32;
+                continue;
+            }
+            segment.position(offset);
+            //An indexed record is counted from it's indexed time.
+            if (current % INDEX_INTERVAL == 0) {
+                time = indexTimes[(int) (current / INDEX_INTERVAL)];
+            }
+            long zigzag = readVarint(segment);
+            time += (zigzag >>> 1) ^ -(zigzag & 1);
+            String device = devices.get((int) readVarint(segment));
+            byte[] data = new byte[(int) readVarint(segment)];
+            segment.get(data);
+            position = ((long) segmentNumber << 32) | segment.position();
+            if (current == row) {
+                cursorRow = row + 1;
+                cursorPosition = position;
+                cursorTime = time;
+                return new MessageInfo(data, device, time);
+            }
+            current++;
+        }
+    }
+
+    /**
+     * Returns the number of records in the log.
+     * @return the number of records.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes which are taken on disk by the segments.
+     * @return the size of the segment files in bytes.
+     */
+    public long getDiskSize() {
+        return (long) segments.size() * SEGMENT_SIZE;
+    }
+
+    /**
+     * Removes all records and all the segments except the first one.
+     */
+    public void clear() {
+        while (segments.size() > 1) {
+            segments.remove(segments.size() - 1);
+            deleteSegment(segmentFiles.remove(segmentFiles.size() - 1));
+        }
+        segments.get(0).clear();
+        size = 0;
+        lastTime = 0;
+        cursorRow = -1;
+    }
+
+    /**
+     * Forgets all records and deletes the segment files. The files of mapped segments may be kept by
+     * the operating system until they are unmapped, then they are deleted on exit.
+     */
+    public void close() {
+        segments.clear();
+        for (File file : segmentFiles) {
+            deleteSegment(file);
+        }
+        segmentFiles.clear();
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+        size = 0;
+        cursorRow = -1;
+    }
+
+    //Creates and maps a new segment file after the last one.
+    private void addSegment() throws IOException {
+        File file = new File(directory, String.format("segment-%05d.log", segments.size()));
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(SEGMENT_SIZE);
+            segments.add(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+        }
+        segmentFiles.add(file);
+        if (segments.size() > segmentEnds.length) {
+            segmentEnds = Arrays.copyOf(segmentEnds, segmentEnds.length * 2);
+        }
+    }
+
+    //Deletes received segment file, or leaves it to be deleted on exit.
+    private static void deleteSegment(File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    //Returns the number of received device, giving a new number to a new device.
+    private int getDeviceId(String device) {
+        Integer id = deviceIds.get(device);
+        if (id == null) {
+            id = devices.size();
+            devices.add(device);
+            deviceIds.put(device, id);
+        }
+        return id;
+    }
+
+    //Writes received number as 7 bits per byte, the highest bit shows that more bytes follow.
+    private static void writeVarint(MappedByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    //Reads a number written by writeVarint.
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
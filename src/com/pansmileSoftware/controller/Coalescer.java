@@ -0,0 +1,139 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+
+/**
+ * This class limits the rate of Control Change, Pitch Bend and Channel Pressure messages sent to one destination.
+ * Each controller of each channel may be sent at most <code>maxRate</code> times per second. A message which comes
+ * earlier is kept as pending and is replaced by the next message of the same controller, so only the last value
+ * is sent when the controller is allowed again: the intermediate values of a fader sweep are lost, but the final
+ * state is always sent. The state of all controllers is kept in flat arrays indexed by the channel and
+ * the controller number. Other messages are passed through.
+ * @see DestinationSettings#getMaxRate()
+ * @see DestinationOutput
+ */
+public class Coalescer {
+    //The slots of Control Changes are channel * 128 + controller, then go 16 Pitch Bends and 16 Channel Pressures.
+    private static final int PITCH_BEND_SLOTS = 16 * 128;
+    private static final int PRESSURE_SLOTS = PITCH_BEND_SLOTS + 16;
+    private static final int SLOTS = PRESSURE_SLOTS + 16;
+
+    private final DestinationOutput output;
+    private final DestinationSettings settings;
+    //The state of the slots. Guarded by this.
+    private final long[] allowedAt = new long[SLOTS];
+    private final MidiMessage[] pending = new MidiMessage[SLOTS];
+    private final MidiTellMatch[] pendingSenders = new MidiTellMatch[SLOTS];
+    private final long[] pendingDeadlines = new long[SLOTS];
+    private final boolean[] isFlushScheduled = new boolean[SLOTS];
+    private long coalesced;
+
+    /**
+     * Creates a <code>Coalescer</code> in front of received output.
+     * @param output  the <code>DestinationOutput</code> where allowed messages are put.
+     * @param settings  the <code>DestinationSettings</code> which keep the maximum rate.
+     */
+    Coalescer(DestinationOutput output, DestinationSettings settings) {
+        this.output = output;
+        this.settings = settings;
+        Arrays.fill(allowedAt, System.nanoTime());
+    }
+
+    /**
+     * Puts received message into the output if it's controller is allowed now, otherwise keeps it until
+     * the controller is allowed again.
+     * @param message  a <code>MidiMessage</code> to send.
+     * @param sender  the <code>MidiTellMatch</code> which failures are counted, or null.
+     * @param deadline  the <code>System.nanoTime()</code> when the device must send the message, or -1.
+     */
+    public void offer(MidiMessage message, MidiTellMatch sender, long deadline) {
+        int maxRate = settings.getMaxRate();
+        int slot = maxRate > 0 ? slotOf(message) : -1;
+        if (slot < 0) {
+            output.enqueue(message, sender, deadline);
+            return;
+        }
+        long now = System.nanoTime();
+        long flushAt = 0;
+        boolean isAllowed;
+        synchronized (this) {
+            if (pending[slot] == null && now - allowedAt[slot] >= 0) {
+                allowedAt[slot] = now + 1_000_000_000L / maxRate;
+                isAllowed = true;
+            } else {
+                //Keeping the message until the controller is allowed, replacing the older pending one.
+                if (pending[slot] != null) {
+                    coalesced++;
+                }
+                pending[slot] = message;
+                pendingSenders[slot] = sender;
+                pendingDeadlines[slot] = deadline;
+                if (isFlushScheduled[slot]) {
+                    return;
+                }
+                isFlushScheduled[slot] = true;
+                flushAt = allowedAt[slot];
+                isAllowed = false;
+            }
+        }
+        if (isAllowed) {
+            output.enqueue(message, sender, deadline);
+        } else {
+            long flushTime = flushAt;
+            DelayScheduler.scheduleAt(() -> flush(slot), flushTime);
+        }
+    }
+
+    //Sends the last pending message of the slot.
+    private void flush(int slot) {
+        MidiMessage message;
+        MidiTellMatch sender;
+        long deadline;
+        synchronized (this) {
+            message = pending[slot];
+            sender = pendingSenders[slot];
+            deadline = pendingDeadlines[slot];
+            pending[slot] = null;
+            pendingSenders[slot] = null;
+            isFlushScheduled[slot] = false;
+            int maxRate = settings.getMaxRate();
+            allowedAt[slot] = System.nanoTime() + (maxRate > 0 ? 1_000_000_000L / maxRate : 0);
+        }
+        if (message != null) {
+            output.enqueue(message, sender, deadline);
+        }
+    }
+
+    /**
+     * Returns the slot of received message, or -1 if the message is not coalesced.
+     * @param message  a <code>MidiMessage</code> to check.
+     * @return the index of the message's channel and controller in the arrays of current <code>Coalescer</code>.
+     */
+    private static int slotOf(MidiMessage message) {
+        if (!(message instanceof ShortMessage)) {
+            return -1;
+        }
+        ShortMessage shortMessage = (ShortMessage) message;
+        int channel = shortMessage.getChannel();
+        switch (shortMessage.getCommand()) {
+            case ShortMessage.CONTROL_CHANGE:
+                return channel * 128 + shortMessage.getData1();
+            case ShortMessage.PITCH_BEND:
+                return PITCH_BEND_SLOTS + channel;
+            case ShortMessage.CHANNEL_PRESSURE:
+                return PRESSURE_SLOTS + channel;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the number of messages which were replaced by later values of the same controller.
+     * @return the number of skipped intermediate values.
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+}
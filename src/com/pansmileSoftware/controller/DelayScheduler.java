@@ -0,0 +1,215 @@
+package com.pansmileSoftware.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This static class runs all delayed sends of the app on one dedicated thread: the latency compensation and
+ * the macro delays of <code>MidiTellMatch</code>es and the delayed rows of the MIDI-monitor.
+ * Scheduling a task never blocks: the task is put into a lock-free queue and the scheduler's thread is woken up.
+ * The thread keeps the tasks ordered by their deadlines, parks until shortly before the nearest one and
+ * yields for the rest of the time, so the tasks are run close to their deadlines no matter how many are waiting.
+ * The difference between the deadline and the actual time of running is measured for each task.
+ * Tasks which are waiting for a note value follow the tempo of their source: when the tempo changes,
+ * the rest of the note value they are waiting for is rescaled, while the fixed time after it is kept.
+ * A change of tempo is signalled by flags, so the source's thread allocates nothing to tell about it.
+ * @see SpyTransmitter
+ * @see com.pansmileSoftware.model.MonitorTableModel
+ */
+public class DelayScheduler {
+    /**The time before a deadline when the thread stops parking and starts yielding, in nanoseconds.*/
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static final ConcurrentLinkedQueue<DelayedTask> INCOMING = new ConcurrentLinkedQueue<>();
+    //True if some TempoTracker has requested a rescale which is not done yet.
+    private static volatile boolean isRescalePending;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final Thread THREAD;
+
+    //The jitter statistics are written by the scheduler's thread only.
+    private static volatile long jitterCount;
+    private static volatile long jitterSum;
+    private static volatile long jitterMax;
+
+    static {
+        THREAD = new Thread(DelayScheduler::run, "MIDI Tell-Match scheduler");
+        THREAD.setDaemon(true);
+        THREAD.setPriority(Thread.MAX_PRIORITY);
+        THREAD.start();
+    }
+
+    private DelayScheduler() {
+    }
+
+    /**
+     * Runs received task on the scheduler's thread after an amount of time.
+     * @param task  a <code>Runnable</code> to run.
+     * @param delay  an amount of time in microseconds to wait for.
+     */
+    public static void schedule(Runnable task, long delay) {
+        scheduleAt(task, System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(Math.max(0, delay)));
+    }
+
+    /**
+     * Runs received task on the scheduler's thread at received time.
+     * @param task  a <code>Runnable</code> to run.
+     * @param deadline  the time to run the task at, as returned by <code>System.nanoTime()</code>.
+     */
+    public static void scheduleAt(Runnable task, long deadline) {
+        INCOMING.offer(new DelayedTask(task, deadline, SEQUENCE.getAndIncrement()));
+        LockSupport.unpark(THREAD);
+    }
+
+    /**
+     * Runs received task on the scheduler's thread after a note value, which is rescaled when the tempo changes,
+     * and a fixed time after it.
+     * @param task  a <code>Runnable</code> to run.
+     * @param base  the time the note value ends at, as returned by <code>System.nanoTime()</code>.
+     * @param fixedNanos  the time in nanoseconds to wait for after the base time, which doesn't follow the tempo.
+     * @param tempo  the <code>TempoTracker</code> the note value was counted with.
+     * @param quarterNanos  the length of a quarter note the note value was counted with.
+     */
+    public static void scheduleAt(Runnable task, long base, long fixedNanos, TempoTracker tempo, long quarterNanos) {
+        INCOMING.offer(new DelayedTask(task, base, fixedNanos, SEQUENCE.getAndIncrement(), tempo, quarterNanos));
+        LockSupport.unpark(THREAD);
+    }
+
+    /**
+     * Tells the scheduler that the tempo of received tracker has changed, so the tasks following it are rescaled.
+     * Never blocks and allocates nothing, so it may be called from a source's thread. The tracker's own flag
+     * is set before the scheduler's one, so the scheduler finds it when it sees the request.
+     * @param tempo  a <code>TempoTracker</code> which tempo has changed.
+     */
+    static void rescale(TempoTracker tempo) {
+        tempo.requestRescale();
+        isRescalePending = true;
+        LockSupport.unpark(THREAD);
+    }
+
+    //The loop of the scheduler's thread.
+    private static void run() {
+        //The tasks of all destinations are run here, so a full output queue must never stop this thread.
+        DestinationOutput.markSharedThread();
+        PriorityQueue<DelayedTask> queue = new PriorityQueue<>();
+        while (true) {
+            DelayedTask incoming;
+            while ((incoming = INCOMING.poll()) != null) {
+                queue.add(incoming);
+            }
+            if (isRescalePending) {
+                //The flag is cleared before the trackers are checked, so a request made meanwhile isn't lost.
+                isRescalePending = false;
+                for (TempoTracker tempo : TempoTracker.getAll()) {
+                    if (tempo.takeRescaleRequest()) {
+                        rescale(queue, tempo);
+                    }
+                }
+            }
+            DelayedTask next = queue.peek();
+            if (next == null) {
+                LockSupport.park();
+                continue;
+            }
+            long wait = next.deadline - System.nanoTime();
+            if (wait > SPIN_NANOS) {
+                //A new task may come while parking, so the queue is checked again after waking up.
+                LockSupport.parkNanos(wait - SPIN_NANOS);
+                continue;
+            }
+            if (wait > 0) {
+                Thread.yield();
+                continue;
+            }
+            queue.poll();
+            measure(-wait);
+            try {
+                next.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Moves the deadlines of the tasks following received tempo, so the rest of the note value they are waiting
+     * for is counted with the new length of a quarter note. The fixed time after the note value is kept.
+     * The tasks are taken out of the queue while they are changed.
+     */
+    private static void rescale(PriorityQueue<DelayedTask> queue, TempoTracker tempo) {
+        long quarter = tempo.getQuarterNanos();
+        if (quarter == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<DelayedTask> rescaled = new ArrayList<>();
+        queue.removeIf(task -> task.tempo == tempo && task.quarterNanos != quarter && rescaled.add(task));
+        for (DelayedTask task : rescaled) {
+            long rest = task.base - now;
+            if (rest > 0) {
+                task.base = now + (long) ((double) rest * quarter / task.quarterNanos);
+                task.deadline = task.base + task.fixedNanos;
+            }
+            task.quarterNanos = quarter;
+            queue.add(task);
+        }
+    }
+
+    //Adds the lateness of a task to the jitter statistics.
+    private static void measure(long lateness) {
+        jitterCount++;
+        jitterSum += lateness;
+        if (lateness > jitterMax) {
+            jitterMax = lateness;
+        }
+    }
+
+    /**
+     * Returns the number of tasks which were run since the statistics were reset.
+     * @return the number of run tasks.
+     */
+    public static long getJitterCount() {
+        return jitterCount;
+    }
+
+    /**
+     * Returns the average difference between the deadlines of the tasks and the time they were actually run at.
+     * @return the average jitter in microseconds.
+     */
+    public static double getMeanJitter() {
+        long count = jitterCount;
+        return count == 0 ? 0 : jitterSum / 1000.0 / count;
+    }
+
+    /**
+     * Returns the maximum difference between the deadline of a task and the time it was actually run at.
+     * @return the maximum jitter in microseconds.
+     */
+    public static double getMaxJitter() {
+        return jitterMax / 1000.0;
+    }
+
+    /**
+     * Resets the jitter statistics. The statistics are reset on the scheduler's thread, so no measure is lost.
+     */
+    public static void resetJitter() {
+        scheduleAt(() -> {
+            jitterCount = 0;
+            jitterSum = 0;
+            jitterMax = 0;
+        }, System.nanoTime());
+    }
+
+    /**
+     * Creates a <code>String</code> describing the jitter statistics.
+     * @return the number of run tasks, the average and the maximum jitter.
+     */
+    public static String getStats() {
+        return String.format("Scheduler: %d delayed sends, jitter avg %.1f us, max %.1f us",
+                getJitterCount(), getMeanJitter(), getMaxJitter());
+    }
+}
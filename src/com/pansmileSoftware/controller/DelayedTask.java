@@ -0,0 +1,47 @@
+package com.pansmileSoftware.controller;
+
+/**
+ * This class is a task waiting in the queue of the {@link DelayScheduler}. Tasks are ordered by their deadlines,
+ * and the tasks having the same deadline are ordered by the time they were scheduled at.
+ * A task which waits for a note value keeps the tempo it was scheduled at, so it's deadline could be rescaled
+ * when the tempo changes. Such a deadline consists of the base time, when the note value ends, and a fixed time
+ * after it, like macro delays and latency compensation, so only the note value is rescaled.
+ * The deadline is changed by the scheduler's thread only.
+ * @see DelayScheduler
+ */
+class DelayedTask implements Comparable<DelayedTask> {
+    final Runnable task;
+    /**The time the task must be run at, as returned by <code>System.nanoTime()</code>.*/
+    long deadline;
+    /**The time the note value ends at, which is the deadline without the fixed time.*/
+    long base;
+    /**The time in nanoseconds between the base time and the deadline, which doesn't follow the tempo.*/
+    final long fixedNanos;
+    private final long sequence;
+    /**The tempo the task follows, or null if it waits for a fixed time.*/
+    final TempoTracker tempo;
+    /**The length of a quarter note the deadline was counted with.*/
+    long quarterNanos;
+
+    DelayedTask(Runnable task, long deadline, long sequence) {
+        this(task, deadline, 0, sequence, null, 0);
+    }
+
+    DelayedTask(Runnable task, long base, long fixedNanos, long sequence, TempoTracker tempo, long quarterNanos) {
+        this.task = task;
+        this.base = base;
+        this.fixedNanos = fixedNanos;
+        this.deadline = base + fixedNanos;
+        this.sequence = sequence;
+        this.tempo = tempo;
+        this.quarterNanos = quarterNanos;
+    }
+
+    @Override
+    public int compareTo(DelayedTask other) {
+        if (deadline != other.deadline) {
+            return deadline - other.deadline < 0 ? -1 : 1;
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
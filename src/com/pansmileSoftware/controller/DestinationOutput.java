@@ -0,0 +1,406 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is the output queue of one destination device. Senders only put messages into a bounded ring,
+ * and the device's own writer thread is the only one which sends them to the device, so a slow or stalled device
+ * delays only it's own messages. When the queue is full, the <code>OverflowPolicy</code> of the device's
+ * {@link DestinationSettings} decides what to do with a new message. The depth of the queue, the number of
+ * dropped and coalesced messages and the number of written ones are measured.
+ * The threads which are shared by all destinations, the <code>DelayScheduler</code>'s thread and the threads of
+ * sources, never wait for a full queue, so with {@link OverflowPolicy#BLOCK} they drop the oldest message instead
+ * and the drop is counted. Only a sender which owns it's thread waits.
+ * If the device's maximum controller rate is set, messages are passed through a {@link Coalescer} first.
+ * A message may carry a deadline. It's written at once with a timestamp in the device's clock, so the device itself
+ * sends it at the deadline. If the device has lost it's clock, the message is rescheduled by the
+ * <code>DelayScheduler</code> instead.
+ * System Real-Time messages, such as Timing Clock, Start and Stop, go through a separate small lane which is
+ * always written first, so they never wait behind long SysEx messages or a burst of notes. The time Timing Clock
+ * messages wait in their lane is measured by a {@link JitterHistogram}.
+ * @see PooledReceiver
+ * @see DestinationSettings
+ * @see OverflowPolicy
+ */
+public class DestinationOutput {
+    /**The number of System Real-Time messages which may wait in their lane.*/
+    public static final int REAL_TIME_CAPACITY = 64;
+    //The number of times a sender tries to take the lock before it waits for it.
+    private static final int SENDER_SPINS = 1000;
+    //Marks the threads which are shared by all destinations, so they never wait for a full queue.
+    private static final ThreadLocal<Boolean> SHARED_THREAD = new ThreadLocal<>();
+
+    private final PooledReceiver receiver;
+    private final DestinationSettings settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    //The ring of waiting messages, the MidiTellMatches which have sent them and their deadlines.
+    //Guarded by the lock.
+    private MidiMessage[] messages;
+    private MidiTellMatch[] senders;
+    private long[] deadlines;
+    //The lane of System Real-Time messages, which never changes it's capacity. Guarded by the lock.
+    private final MidiMessage[] realTimeMessages = new MidiMessage[REAL_TIME_CAPACITY];
+    private final MidiTellMatch[] realTimeSenders = new MidiTellMatch[REAL_TIME_CAPACITY];
+    private final long[] realTimeDeadlines = new long[REAL_TIME_CAPACITY];
+    private final long[] realTimeQueuedAt = new long[REAL_TIME_CAPACITY];
+    private int realTimeHead;
+    private int realTimeCount;
+    private final JitterHistogram clockJitter = new JitterHistogram();
+    private int head;
+    private int count;
+    private final Thread writer;
+    private final Coalescer coalescer;
+    private volatile boolean isStopped;
+
+    private volatile int maxDepth;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * Creates the output of received receiver's device and starts it's writer thread.
+     * @param receiver  a <code>PooledReceiver</code> of the device.
+     * @param settings  the <code>DestinationSettings</code> of the device.
+     */
+    DestinationOutput(PooledReceiver receiver, DestinationSettings settings) {
+        this.receiver = receiver;
+        this.settings = settings;
+        messages = new MidiMessage[settings.getCapacity()];
+        senders = new MidiTellMatch[settings.getCapacity()];
+        deadlines = new long[settings.getCapacity()];
+        coalescer = new Coalescer(this, settings);
+        writer = new Thread(this::write, "MIDI out: " + settings.getDeviceName());
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MAX_PRIORITY);
+        writer.start();
+    }
+
+    /**
+     * Puts received message into the queue, limiting the rate of controllers if it's required by the settings.
+     * @param message  a <code>MidiMessage</code> to send.
+     * @param sender  the <code>MidiTellMatch</code> which failures are counted, or null.
+     * @param deadline  the <code>System.nanoTime()</code> when the device must send the message,
+     * or -1 to send it at once.
+     */
+    public void offer(MidiMessage message, MidiTellMatch sender, long deadline) {
+        coalescer.offer(message, sender, deadline);
+    }
+
+    /**
+     * Marks the current thread as shared by all destinations, so it's never blocked by a full queue.
+     * Allocates nothing after the first call on a thread.
+     */
+    static void markSharedThread() {
+        if (SHARED_THREAD.get() == null) {
+            SHARED_THREAD.set(Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Puts received message into the queue. Returns at once unless the queue is full, the overflow policy
+     * is {@link OverflowPolicy#BLOCK} and the current thread is not a shared one.
+     * @param message  a <code>MidiMessage</code> to send.
+     * @param sender  the <code>MidiTellMatch</code> which failures are counted, or null.
+     * @param deadline  the <code>System.nanoTime()</code> when the device must send the message,
+     * or -1 to send it at once.
+     */
+    public void enqueue(MidiMessage message, MidiTellMatch sender, long deadline) {
+        if (message.getLength() == 1 && StatusByte.isRealTime(message.getStatus())) {
+            enqueueRealTime(message, sender, deadline);
+            return;
+        }
+        lockForSender();
+        try {
+            if (messages.length != settings.getCapacity()) {
+                resize(settings.getCapacity());
+            }
+            if (count == messages.length) {
+                switch (settings.getOverflowPolicy()) {
+                    case BLOCK:
+                        //A shared thread would stop the other destinations, so it drops the oldest message.
+                        if (SHARED_THREAD.get() != null) {
+                            dropOldest();
+                            break;
+                        }
+                        while (count == messages.length && !isStopped) {
+                            notFull.awaitUninterruptibly();
+                        }
+                        break;
+                    case COALESCE:
+                        if (coalesce(message, sender, deadline)) {
+                            coalesced.incrementAndGet();
+                            return;
+                        }
+                        dropOldest();
+                        break;
+                    default:
+                        dropOldest();
+                }
+            }
+            if (isStopped) {
+                return;
+            }
+            int tail = (head + count) % messages.length;
+            messages[tail] = message;
+            senders[tail] = sender;
+            deadlines[tail] = deadline;
+            count++;
+            if (count > maxDepth) {
+                maxDepth = count;
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts received System Real-Time message into it's lane. The lane is never blocked: if it's full,
+     * the oldest message in it is dropped.
+     */
+    private void enqueueRealTime(MidiMessage message, MidiTellMatch sender, long deadline) {
+        lockForSender();
+        try {
+            if (isStopped) {
+                return;
+            }
+            if (realTimeCount == REAL_TIME_CAPACITY) {
+                realTimeHead = (realTimeHead + 1) % REAL_TIME_CAPACITY;
+                realTimeCount--;
+                dropped.incrementAndGet();
+            }
+            int tail = (realTimeHead + realTimeCount) % REAL_TIME_CAPACITY;
+            realTimeMessages[tail] = message;
+            realTimeSenders[tail] = sender;
+            realTimeDeadlines[tail] = deadline;
+            realTimeQueuedAt[tail] = System.nanoTime();
+            realTimeCount++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the lock for a sender. The writer holds the lock only while it takes a message, so the sender tries
+     * again for a while instead of parking at once, which would also allocate a node of the lock's queue on
+     * the source's thread.
+     */
+    private void lockForSender() {
+        for (int i = 0; i < SENDER_SPINS; i++) {
+            if (lock.tryLock()) {
+                return;
+            }
+        }
+        lock.lock();
+    }
+
+    //The loop of the writer thread.
+    private void write() {
+        while (true) {
+            MidiMessage message;
+            MidiTellMatch sender;
+            long deadline;
+            long queuedAt = -1;
+            lock.lock();
+            try {
+                while (count == 0 && realTimeCount == 0 && !isStopped) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (isStopped) {
+                    return;
+                }
+                //System Real-Time messages are always taken first.
+                if (realTimeCount > 0) {
+                    message = realTimeMessages[realTimeHead];
+                    sender = realTimeSenders[realTimeHead];
+                    deadline = realTimeDeadlines[realTimeHead];
+                    queuedAt = realTimeQueuedAt[realTimeHead];
+                    realTimeMessages[realTimeHead] = null;
+                    realTimeSenders[realTimeHead] = null;
+                    realTimeHead = (realTimeHead + 1) % REAL_TIME_CAPACITY;
+                    realTimeCount--;
+                } else {
+                    message = messages[head];
+                    sender = senders[head];
+                    deadline = deadlines[head];
+                    messages[head] = null;
+                    senders[head] = null;
+                    head = (head + 1) % messages.length;
+                    count--;
+                    notFull.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (deadline == -1) {
+                    receiver.send(message);
+                } else if (!receiver.send(message, deadline)) {
+                    //The device has no clock anymore, so the scheduler waits for the deadline instead.
+                    MidiMessage late = message;
+                    MidiTellMatch lateSender = sender;
+                    DelayScheduler.scheduleAt(() -> enqueue(late, lateSender, -1), deadline);
+                    continue;
+                }
+                written.incrementAndGet();
+                if (queuedAt != -1 && message.getStatus() == ShortMessage.TIMING_CLOCK) {
+                    clockJitter.record(System.nanoTime() - queuedAt);
+                }
+            } catch (MidiUnavailableException | RuntimeException e) {
+                String description = settings.getDeviceName() + " is unavailable";
+                if (sender != null) {
+                    sender.reportFailure(description);
+                } else {
+                    RoutingErrors.report(new RoutingError(settings.getDeviceName(), description));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces a queued message which is made out of date by received one: a Control Change or a Poly Pressure
+     * with the same status and first data byte, or a Pitch Bend or a Channel Pressure with the same status.
+     * @return true if a message was replaced.
+     */
+    private boolean coalesce(MidiMessage message, MidiTellMatch sender, long deadline) {
+        if (!(message instanceof ShortMessage)) {
+            return false;
+        }
+        ShortMessage shortMessage = (ShortMessage) message;
+        int command = shortMessage.getCommand();
+        boolean byData1 = command == ShortMessage.CONTROL_CHANGE || command == ShortMessage.POLY_PRESSURE;
+        if (!byData1 && command != ShortMessage.PITCH_BEND && command != ShortMessage.CHANNEL_PRESSURE) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int index = (head + i) % messages.length;
+            if (messages[index] instanceof ShortMessage) {
+                ShortMessage queued = (ShortMessage) messages[index];
+                if (queued.getStatus() == shortMessage.getStatus()
+                        && (!byData1 || queued.getData1() == shortMessage.getData1())) {
+                    messages[index] = message;
+                    senders[index] = sender;
+                    deadlines[index] = deadline;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //Removes the oldest queued message.
+    private void dropOldest() {
+        messages[head] = null;
+        senders[head] = null;
+        head = (head + 1) % messages.length;
+        count--;
+        dropped.incrementAndGet();
+    }
+
+    //Moves the queued messages into a ring of new capacity, keeping the newest ones.
+    private void resize(int capacity) {
+        while (count > capacity) {
+            dropOldest();
+        }
+        MidiMessage[] newMessages = new MidiMessage[capacity];
+        MidiTellMatch[] newSenders = new MidiTellMatch[capacity];
+        long[] newDeadlines = new long[capacity];
+        for (int i = 0; i < count; i++) {
+            newMessages[i] = messages[(head + i) % messages.length];
+            newSenders[i] = senders[(head + i) % messages.length];
+            newDeadlines[i] = deadlines[(head + i) % messages.length];
+        }
+        messages = newMessages;
+        senders = newSenders;
+        deadlines = newDeadlines;
+        head = 0;
+        notFull.signalAll();
+    }
+
+    /**
+     * Stops the writer thread. Messages still waiting in the queue are dropped.
+     */
+    void stop() {
+        lock.lock();
+        try {
+            isStopped = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting in the queue.
+     * @return the depth of the queue.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return count + realTimeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the largest number of messages which were waiting in the queue at once.
+     * @return the maximum depth of the queue.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full.
+     * @return the number of dropped messages.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of messages which replaced queued ones because the queue was full.
+     * @return the number of coalesced messages.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the number of messages sent to the device.
+     * @return the number of written messages.
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Returns the histogram of the time Timing Clock messages have waited in their lane before they were written.
+     * @return a <code>JitterHistogram</code> of the clock lane.
+     */
+    public JitterHistogram getClockJitter() {
+        return clockJitter;
+    }
+
+    /**
+     * Creates a <code>String</code> describing the metrics of current <code>DestinationOutput</code>.
+     * @return the depth, the maximum depth, and the numbers of written, dropped, coalesced
+     * and rate limited messages.
+     */
+    public String getStats() {
+        return settings.getDeviceName() + ": depth " + getDepth() + ", max " + maxDepth + ", written "
+                + getWritten() + ", dropped " + getDropped() + ", coalesced " + getCoalesced()
+                + ", rate limited " + coalescer.getCoalesced()
+                + (clockJitter.getCount() > 0 ? "\n    clock lane: " + clockJitter : "");
+    }
+}
@@ -0,0 +1,273 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the settings of one destination device, which are shared by all <code>MidiTellMatch</code>es
+ * sending to it. The settings are registered by the name of the device, so they are kept while the MIDI-system
+ * is rescanned, and they are saved in presets after the <code>MidiTellMatch</code>es, each destination in one line:
+ * <code>@destination</code>, the device name and <code>key=value</code> pairs, all separated by tabs.
+ * The settings may be changed at any time, the destination's output reads them with each message.
+ * @see DestinationOutput
+ * @see GlobalPresetManager
+ */
+public class DestinationSettings {
+    /**The default number of messages which may wait in a destination's queue.*/
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**The prefix of the preset lines which are describing destinations.*/
+    public static final String PRESET_KEY = "@destination";
+
+    private static final Map<String, DestinationSettings> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String deviceName;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private volatile int capacity = DEFAULT_CAPACITY;
+    private volatile int maxRate;
+    private volatile boolean isTimestamped;
+    //The time in microseconds which every message is delayed by before it's sent to the destination.
+    private volatile long compensation;
+    //The round-trip times measured by the LatencyCalibrator in microseconds, or -1.
+    private volatile long measuredLatency = -1;
+    private volatile long measuredLatency99 = -1;
+
+    private DestinationSettings(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    /**
+     * Returns the settings of the device with received name, creating the default ones if there are none yet.
+     * @param deviceName  the name of a destination device.
+     * @return the <code>DestinationSettings</code> of the device.
+     */
+    public static DestinationSettings of(String deviceName) {
+        return REGISTRY.computeIfAbsent(deviceName, DestinationSettings::new);
+    }
+
+    /**
+     * Returns the settings of received device, creating the default ones if there are none yet.
+     * @param device  a destination <code>MidiDevice</code>.
+     * @return the <code>DestinationSettings</code> of the device.
+     */
+    public static DestinationSettings of(MidiDevice device) {
+        String name = device.getDeviceInfo().getName();
+        return of(name != null ? name : "not defined");
+    }
+
+    /**
+     * Returns the settings of all destinations which differ from the default ones.
+     * @return a <code>List</code> of <code>DestinationSettings</code>.
+     */
+    public static List<DestinationSettings> getChanged() {
+        List<DestinationSettings> changed = new ArrayList<>();
+        for (DestinationSettings settings : REGISTRY.values()) {
+            if (!settings.isDefault()) {
+                changed.add(settings);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Sets the settings of all destinations to the default ones, so the settings of a loaded preset don't carry
+     * the settings of the previous one. The settings are reset in place, because the destinations' outputs
+     * keep them.
+     */
+    public static void resetAll() {
+        for (DestinationSettings settings : REGISTRY.values()) {
+            settings.reset();
+        }
+    }
+
+    //Sets the default values of all the settings.
+    private void reset() {
+        overflowPolicy = OverflowPolicy.DROP_OLDEST;
+        capacity = DEFAULT_CAPACITY;
+        maxRate = 0;
+        isTimestamped = false;
+        compensation = 0;
+        measuredLatency = -1;
+        measuredLatency99 = -1;
+    }
+
+    /**
+     * Returns true if current <code>DestinationSettings</code> are the default ones.
+     * @return true if nothing is changed.
+     */
+    public boolean isDefault() {
+        return overflowPolicy == OverflowPolicy.DROP_OLDEST && capacity == DEFAULT_CAPACITY
+                && maxRate == 0 && !isTimestamped && compensation == 0 && measuredLatency == -1;
+    }
+
+    /**
+     * Creates the line which describes current <code>DestinationSettings</code> in a preset.
+     * @return a <code>String</code> without the line separator.
+     */
+    public String toPresetLine() {
+        return PRESET_KEY + "\t" + deviceName + "\toverflow=" + overflowPolicy.name() + "\tcapacity=" + capacity
+                + "\trate=" + maxRate + "\ttimestamps=" + isTimestamped + "\tcompensation=" + compensation
+                + "\trtt=" + measuredLatency + "\trtt99=" + measuredLatency99;
+    }
+
+    /**
+     * Reads a preset line created by {@link #toPresetLine()} and applies it to the settings of the device.
+     * Unknown keys are skipped, so presets saved by newer versions could be read.
+     * @param line  a <code>String</code> to read.
+     * @throws InvalidMidiDataException in case if the line is incorrect.
+     */
+    public static void readPresetLine(String line) throws InvalidMidiDataException {
+        String[] parts = line.split("\t");
+        if (parts.length < 2 || !parts[0].equals(PRESET_KEY)) {
+            throw new InvalidMidiDataException("\nInvalid Destination Settings: \n" + line);
+        }
+        DestinationSettings settings = of(parts[1]);
+        try {
+            for (int i = 2; i < parts.length; i++) {
+                int split = parts[i].indexOf('=');
+                String key = parts[i].substring(0, Math.max(split, 0));
+                String value = parts[i].substring(split + 1);
+                switch (key) {
+                    case "overflow":
+                        settings.setOverflowPolicy(OverflowPolicy.valueOf(value));
+                        break;
+                    case "capacity":
+                        settings.setCapacity(Integer.parseInt(value));
+                        break;
+                    case "rate":
+                        settings.setMaxRate(Integer.parseInt(value));
+                        break;
+                    case "timestamps":
+                        settings.setTimestamped(Boolean.parseBoolean(value));
+                        break;
+                    case "compensation":
+                        settings.setCompensation(Long.parseLong(value));
+                        break;
+                    case "rtt":
+                        settings.measuredLatency = Long.parseLong(value);
+                        break;
+                    case "rtt99":
+                        settings.measuredLatency99 = Long.parseLong(value);
+                        break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidMidiDataException("\nInvalid Destination Settings: \n" + line);
+        }
+    }
+
+    //Here is a bunch of getters and setters.
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the number of messages which may wait in the destination's queue.
+     * @param capacity  a positive number of messages.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the maximum number of Control Change, Pitch Bend or Channel Pressure messages per second which are
+     * sent to the destination for each controller and channel. Zero means there is no limit.
+     * @return the maximum rate in messages per second.
+     * @see Coalescer
+     */
+    public int getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Sets the maximum number of messages per second for each controller and channel of the destination.
+     * @param maxRate  a rate in messages per second, or zero to send every message.
+     */
+    public void setMaxRate(int maxRate) {
+        if (maxRate < 0) {
+            throw new IllegalArgumentException("rate must not be negative");
+        }
+        this.maxRate = maxRate;
+    }
+
+    /**
+     * Returns true if delayed messages are given to the destination in advance with a timestamp, so the device
+     * sends them itself at the right time. It's used by software synthesizers only, other devices ignore
+     * timestamps and are still delayed by the scheduler, as well as devices which have no clock.
+     * @return true if the timestamped output is enabled.
+     * @see PooledReceiver#isTimestamped()
+     */
+    public boolean isTimestamped() {
+        return isTimestamped;
+    }
+
+    public void setTimestamped(boolean timestamped) {
+        isTimestamped = timestamped;
+    }
+
+    /**
+     * Returns the latency compensation of the destination. Every message sent to the destination is delayed by it,
+     * in addition to the latency compensation of the <code>MidiTellMatch</code>, so faster devices could wait for
+     * slower ones and all of them sound at the same time.
+     * @return the compensation in microseconds.
+     * @see LatencyMeasurement#proposeCompensations(List)
+     */
+    public long getCompensation() {
+        return compensation;
+    }
+
+    /**
+     * Sets the latency compensation of the destination.
+     * @param compensation  a delay in microseconds, or zero to send messages without delay.
+     */
+    public void setCompensation(long compensation) {
+        if (compensation < 0) {
+            throw new IllegalArgumentException("compensation must not be negative");
+        }
+        this.compensation = compensation;
+    }
+
+    /**
+     * Keeps the result of calibrating the destination, so it's saved in the preset.
+     * @param measurement  a valid <code>LatencyMeasurement</code> of the destination.
+     * @see LatencyCalibrator
+     */
+    public void setMeasuredLatency(LatencyMeasurement measurement) {
+        measuredLatency = measurement.getPercentile(50);
+        measuredLatency99 = measurement.getPercentile(99);
+    }
+
+    /**
+     * Returns the median round-trip time measured by the last calibration of the destination.
+     * @return the time in microseconds, or -1 if the destination was never calibrated.
+     */
+    public long getMeasuredLatency() {
+        return measuredLatency;
+    }
+
+    /**
+     * Returns the 99th percentile of round-trip times measured by the last calibration of the destination.
+     * @return the time in microseconds, or -1 if the destination was never calibrated.
+     */
+    public long getMeasuredLatency99() {
+        return measuredLatency99;
+    }
+}
@@ -1,7 +1,5 @@
 package com.pansmileSoftware.controller;
 
-import com.pansmileSoftware.view.MainView;
-
 import javax.sound.midi.*;
 import java.io.*;
 import java.util.ArrayList;
@@ -12,6 +10,10 @@ import java.util.*;
  Tell-Matches info to a file in correct order or reads these info from a file in correct order.
  */
 public class GlobalPresetManager {
+    //The keys of the optional lines of a MidiTellMatch. Other lines starting with @ are names of MidiTellMatches.
+    private static final Set<String> EXTENSION_KEYS =
+            new HashSet<>(Arrays.asList("transform", "macro", "limits", "delay"));
+
     /**
      * Writes the information about <code>MidiTellMatch</code>es from received <code>List</code>
      * into the received <code>File</code>.
@@ -32,28 +34,35 @@ public class GlobalPresetManager {
         //Setting a flag of the end of file.
         String end = "/1/2/3***end***/4/5/6";
         write.write(end.getBytes());
+        //Writing the changed settings of destinations after the flag, so older versions will skip them.
+        for (DestinationSettings settings : DestinationSettings.getChanged()) {
+            write.write(("\n" + settings.toPresetLine()).getBytes());
+        }
         write.close();
     }
 
     /**
      * Reconstructs <code>MidiTellMatch</code>es from the information in received <code>File</code> and adds these
-     * <code>MidiTellMatch</code>es into received <code>MainView</code>'s <code>JList</code> of
+     * <code>MidiTellMatch</code>es into received <code>TellMatchListener</code>'s list of
      * <code>MidiTellMatch</code>es.
-     * @param owner  a <code>MainView</code> where we need to add reconstructed <code>MidiTellMatch</code>es.
+     * @param owner  a <code>TellMatchListener</code> which will own reconstructed <code>MidiTellMatch</code>es.
      * @param file  a <code>File</code> where the information about <code>MidiTellMatch</code>es is written.
      * @throws IOException  if an I/O error occurs.
      * @throws MidiUnavailableException  if an MidiDeviceUnavailable error occurs.
      * @throws InvalidMidiDataException  if an InvalidMidiData error occurs.
      */
-    public static ArrayList<MidiTellMatch> loadGlobal(MainView owner, File file) throws IOException,
+    public static ArrayList<MidiTellMatch> loadGlobal(TellMatchListener owner, File file) throws IOException,
             MidiUnavailableException, InvalidMidiDataException {
         ArrayList<MidiTellMatch> midiTellMatches = new ArrayList<>();
         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+        //The settings of destinations belong to the preset, so the ones of the previous preset are forgotten.
+        DestinationSettings.resetAll();
 
         while (true) {
             //Getting the name.
             String name = reader.readLine();
             if (name.equals("/1/2/3***end***/4/5/6") || name.equals(" ")) {
+                readGlobalSettings(reader);
                 break;
             }
             //Getting the source name.
@@ -97,10 +106,18 @@ public class GlobalPresetManager {
             byte radix = Byte.parseByte(reader.readLine());
             boolean ignoreVelocity = Boolean.parseBoolean(reader.readLine());
             double latencyComp = Double.parseDouble(reader.readLine());
+            //Reading optional settings which are written after the common info.
+            Map<String, String> extensions = readExtensions(reader);
 
             //Reconstructing a <code>MidiTellMatch</code> using received information.
             MidiTellMatch tellMatch = new MidiTellMatch(source,destinations,owner,radix);
-            if (!trigger.isEmpty() && !triggerTypeString.isEmpty()) {
+            if (SequenceTrigger.isSequence(trigger)) {
+                tellMatch.setSequenceTrigger(SequenceTrigger.compile(trigger, radix), trigger);
+            } else if (SysexPattern.isPattern(trigger)) {
+                tellMatch.setSysexPattern(SysexPattern.compile(trigger, radix), trigger);
+            } else if (TriggerPattern.isPattern(trigger)) {
+                tellMatch.setTriggerPattern(TriggerPattern.compile(trigger, radix), trigger);
+            } else if (!trigger.isEmpty() && !triggerTypeString.isEmpty()) {
                 tellMatch.setTriggerMessage(MessageEncoder.encode(trigger, radix,
                         StatusByte.valueOf(triggerTypeString), inputChannel));
                 tellMatch.setTriggerString(trigger);
@@ -118,10 +135,61 @@ public class GlobalPresetManager {
             if (latencyComp != - 1){
                 tellMatch.setLatencyComp(latencyComp);
             }
+            if (extensions.containsKey("transform")) {
+                tellMatch.setValueTransform(ValueTransform.compile(extensions.get("transform")));
+            }
+            if (extensions.containsKey("macro")) {
+                tellMatch.setMacro(OutgoingMacro.compile(extensions.get("macro"), radix));
+            }
+            if (extensions.containsKey("limits")) {
+                tellMatch.setLimiter(TriggerLimiter.compile(extensions.get("limits")));
+            }
+            if (extensions.containsKey("delay")) {
+                tellMatch.setNoteDelay(NoteValue.compile(extensions.get("delay")));
+            }
             tellMatch.setName(name);
             midiTellMatches.add(tellMatch);
         }
         reader.close();
         return midiTellMatches;
     }
+
+    /**
+     * Reads the settings which are written after the end of <code>MidiTellMatch</code>es, such as the settings of
+     * destinations. Lines which are not known are skipped.
+     * @param reader  a <code>BufferedReader</code> to read from.
+     * @throws IOException  if an I/O error occurs.
+     * @throws InvalidMidiDataException  if a known line is incorrect.
+     */
+    private static void readGlobalSettings(BufferedReader reader) throws IOException, InvalidMidiDataException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(DestinationSettings.PRESET_KEY + "\t")) {
+                DestinationSettings.readPresetLine(line);
+            }
+        }
+    }
+
+    /**
+     * Reads optional lines which are starting with <code>@</code> and contain a known key and a value separated
+     * by a space. Stops at the first line which is not an optional one, so it will be read next. The name of
+     * the next <code>MidiTellMatch</code> may start with <code>@</code> too, so only the known keys are read.
+     * Presets saved before these settings were added have no such lines.
+     * @param reader  a <code>BufferedReader</code> to read from.
+     * @return a <code>Map</code> of read keys and values.
+     * @throws IOException  if an I/O error occurs.
+     */
+    private static Map<String, String> readExtensions(BufferedReader reader) throws IOException {
+        Map<String, String> extensions = new HashMap<>();
+        while (true) {
+            reader.mark(8192);
+            String line = reader.readLine();
+            int split = line != null ? line.indexOf(' ') : -1;
+            if (split == -1 || !line.startsWith("@") || !EXTENSION_KEYS.contains(line.substring(1, split))) {
+                reader.reset();
+                return extensions;
+            }
+            extensions.put(line.substring(1, split), line.substring(split + 1));
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs the <code>MidiTellMatch</code>es of a preset without any GUI, for example on a rack machine
+ * without a display. It loads the preset, routes incoming messages until the process is stopped and periodically
+ * logs how many times each <code>MidiTellMatch</code> was triggered and failed, the failures reported
+ * since the previous log and the jitter of delayed sends. Neither Swing nor AWT are loaded.
+ * Usage: <code>java com.pansmileSoftware.controller.HeadlessRouter preset.pst [stats period in seconds]</code>
+ * @see TellMatchListener
+ * @see GlobalPresetManager
+ */
+public class HeadlessRouter implements TellMatchListener {
+    /**The default period of logging the statistics, in seconds.*/
+    private static final long DEFAULT_STATS_PERIOD = 10;
+
+    private final ArrayList<MidiDevice> sources = new ArrayList<>();
+    private final ArrayList<MidiDevice> destinations = new ArrayList<>();
+    private List<MidiTellMatch> tellMatches = new ArrayList<>();
+
+    /**
+     * Creates a new <code>HeadlessRouter</code> using the devices available in the system at the moment.
+     */
+    public HeadlessRouter() {
+        sources.addAll(InputDevicesList.getInputDevicesList());
+        destinations.addAll(OutputDevicesList.getOutputDevices());
+    }
+
+    /**
+     * Loads the <code>MidiTellMatch</code>es from received preset, so they start routing.
+     * @param preset  a preset <code>File</code> to load.
+     * @throws IOException  if an I/O error occurs.
+     * @throws MidiUnavailableException  if no devices are available or some of them are unavailable.
+     * @throws InvalidMidiDataException  if the preset contains incorrect MIDI-data.
+     */
+    public void load(File preset) throws IOException, MidiUnavailableException, InvalidMidiDataException {
+        if (sources.isEmpty() || destinations.isEmpty()) {
+            throw new MidiUnavailableException("No sources or destinations are available in the system");
+        }
+        tellMatches = GlobalPresetManager.loadGlobal(this, preset);
+    }
+
+    /**
+     * Writes the statistics of loaded <code>MidiTellMatch</code>es and the failures reported since the previous
+     * call to the standard output.
+     */
+    public void logStats() {
+        for (MidiTellMatch tellMatch : tellMatches) {
+            System.out.println(tellMatch.getName() + ": sent " + tellMatch.getSentCount()
+                    + ", failed " + tellMatch.getFailureCount()
+                    + (tellMatch.getLimiter() != null ? ", limited " + tellMatch.getLimiter().getLimitedCount() : ""));
+        }
+        for (RoutingError error : RoutingErrors.drain()) {
+            System.out.println("Error " + error);
+        }
+        int dropped = RoutingErrors.takeDropped();
+        if (dropped > 0) {
+            System.out.println(dropped + " more errors were dropped");
+        }
+        System.out.println(DelayScheduler.getStats());
+        for (PooledReceiver receiver : ReceiverPool.getAll()) {
+            System.out.println("Output " + receiver.getOutput().getStats());
+        }
+    }
+
+    /**
+     * Disconnects loaded <code>MidiTellMatch</code>es from their sources.
+     */
+    public void stop() {
+        for (MidiTellMatch tellMatch : tellMatches) {
+            tellMatch.disconnect();
+        }
+    }
+
+    @Override
+    public ArrayList<MidiDevice> getSources() {
+        return sources;
+    }
+
+    @Override
+    public ArrayList<MidiDevice> getDestinations() {
+        return destinations;
+    }
+
+    //There is no listening without GUI, so these are never called.
+    @Override
+    public void triggerListened(MidiTellMatch tellMatch) {
+    }
+
+    @Override
+    public void listeningFailed(MidiTellMatch tellMatch, byte requiredChannel, byte detectedChannel) {
+        System.out.println(tellMatch.getName() + ": incoming message use MIDI-channel " + detectedChannel
+                + " instead of " + requiredChannel);
+    }
+
+    /**
+     * Runs received task right away, as soon as there is no GUI thread.
+     * @param task  a <code>Runnable</code> to run.
+     */
+    @Override
+    public synchronized void runLater(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * Loads the preset from the first argument and routes until the process is stopped.
+     * @param args  the path to a preset and an optional period of logging the statistics in seconds.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0) {
+            System.out.println("Usage: HeadlessRouter preset.pst [stats period in seconds]");
+            System.exit(1);
+        }
+        long startTime = System.nanoTime();
+        long period = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_STATS_PERIOD;
+        HeadlessRouter router = new HeadlessRouter();
+        try {
+            router.load(new File(args[0]));
+        } catch (IOException | MidiUnavailableException | InvalidMidiDataException e) {
+            System.out.println("Unable to load " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Loaded " + router.tellMatches.size() + " Tell-Matches in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            router.logStats();
+            router.stop();
+        }));
+        //Logging the statistics until the process is stopped.
+        while (true) {
+            try {
+                TimeUnit.SECONDS.sleep(period);
+            } catch (InterruptedException e) {
+                return;
+            }
+            router.logStats();
+        }
+    }
+}
@@ -1,37 +1,258 @@
 package com.pansmileSoftware.controller;
 
-import javax.sound.midi.MidiMessage;
-import javax.sound.midi.Receiver;
+import javax.sound.midi.*;
+import java.util.*;
 
 /**
- * This is the receiver that looks for incoming data from parent <code>MidiTellMatch</code> source and
- * sends this data to this <code>MidiTellMatch</code> in order to compare it with the trigger message.
+ * This is the receiver that looks for incoming data from a source and routes this data to the
+ * <code>MidiTellMatch</code>es which are using this source. Only one <code>IncomingMessageReceiver</code> and one
+ * <code>Transmitter</code> is created for each source, no matter how many <code>MidiTellMatch</code>es are using it.
+ * Incoming short messages are routed through a dispatch index keyed by the status byte and the first data byte,
+ * so finding the <code>MidiTellMatch</code>es triggered by a message doesn't depend on the number of loaded ones.
+ * A <code>TriggerPattern</code> is added to each bucket it could match. Incoming SysEx messages are matched
+ * against all SysEx triggers at once by a <code>SysexAutomaton</code>, and short messages are also passed
+ * to a <code>SequenceMatcher</code> which keeps the state of sequence triggers. Timing Clock messages are also
+ * counted by the <code>TempoTracker</code> of the source. While a <code>LatencyCalibrator</code> is attached,
+ * it's probe messages are taken out before any other routing.
  * @see MidiTellMatch
  * @see IncomingMessageReceiver
  */
 public class IncomingMessageReceiver  implements Receiver {
-    private MidiTellMatch owner;
+    /**The receivers of all sources which are in use at the moment.*/
+    private static final Map<MidiDevice, IncomingMessageReceiver> ROUTERS = new HashMap<>();
+    /**The oldest age of an incoming event in microseconds, which is trusted when the timeStamp is converted.*/
+    private static final long MAX_EVENT_AGE = 1_000_000;
+
+    private final MidiDevice source;
+    private final Transmitter sourceTransmitter;
+    private final TempoTracker tempo;
+    private final List<MidiTellMatch> tellMatches = new ArrayList<>();
+    //The dispatch index, the SysEx automaton, the sequence matcher, the long triggers and the listeners,
+    //which are read by the source's thread once per message.
+    private volatile SourceRoutes routes = SourceRoutes.EMPTY;
+    //The calibrator which is waiting for it's probes on this source, or null.
+    private volatile LatencyCalibrator calibrator;
+
+    /**
+     * Constructs an instance of this class and connects it to the transmitter of received source.
+     * @param source  a <code>MidiDevice</code> to listen to.
+     * @throws MidiUnavailableException if the source has no transmitters available.
+     */
+    private IncomingMessageReceiver(MidiDevice source) throws MidiUnavailableException {
+        this.source = source;
+        tempo = TempoTracker.of(source);
+        sourceTransmitter = source.getTransmitter();
+        sourceTransmitter.setReceiver(this);
+    }
+
+    /**
+     * Connects received <code>MidiTellMatch</code> to the <code>IncomingMessageReceiver</code> of received source.
+     * Creates the receiver in case if this source is not used by any other <code>MidiTellMatch</code>.
+     * @param source  a <code>MidiDevice</code> which is the source of the <code>MidiTellMatch</code>.
+     * @param tellMatch  a <code>MidiTellMatch</code> to connect.
+     * @return the <code>IncomingMessageReceiver</code> of received source.
+     * @throws MidiUnavailableException if the source has no transmitters available.
+     */
+    public static synchronized IncomingMessageReceiver connect(MidiDevice source, MidiTellMatch tellMatch)
+            throws MidiUnavailableException {
+        IncomingMessageReceiver router = routerOf(source);
+        router.tellMatches.add(tellMatch);
+        router.reindex();
+        return router;
+    }
+
+    /**
+     * Attaches received <code>LatencyCalibrator</code> to the <code>IncomingMessageReceiver</code> of received
+     * source, so it gets the probes which arrive from the source. Creates the receiver in case if this source
+     * is not used by any <code>MidiTellMatch</code>.
+     * @param source  a <code>MidiDevice</code> where the probes are coming back.
+     * @param calibrator  a <code>LatencyCalibrator</code> to attach.
+     * @return the <code>IncomingMessageReceiver</code> of received source.
+     * @throws MidiUnavailableException if the source has no transmitters available.
+     */
+    public static synchronized IncomingMessageReceiver attach(MidiDevice source, LatencyCalibrator calibrator)
+            throws MidiUnavailableException {
+        IncomingMessageReceiver router = routerOf(source);
+        router.calibrator = calibrator;
+        return router;
+    }
+
+    /**
+     * Detaches the <code>LatencyCalibrator</code> from current <code>IncomingMessageReceiver</code>.
+     * The source's transmitter is closed in case if no <code>MidiTellMatch</code> uses it.
+     */
+    public void detach() {
+        synchronized (IncomingMessageReceiver.class) {
+            calibrator = null;
+            closeIfUnused();
+        }
+    }
+
+    //Returns the receiver of received source, creating it if there is none. Must be called while synchronized.
+    private static IncomingMessageReceiver routerOf(MidiDevice source) throws MidiUnavailableException {
+        IncomingMessageReceiver router = ROUTERS.get(source);
+        if (router == null) {
+            router = new IncomingMessageReceiver(source);
+            ROUTERS.put(source, router);
+        }
+        return router;
+    }
+
+    //Closes the source's transmitter if nothing uses it anymore. Must be called while synchronized.
+    private void closeIfUnused() {
+        if (tellMatches.isEmpty() && calibrator == null && ROUTERS.get(source) == this) {
+            ROUTERS.remove(source);
+            sourceTransmitter.close();
+        }
+    }
+
+    /**
+     * Disconnects received <code>MidiTellMatch</code> from current <code>IncomingMessageReceiver</code>.
+     * The source's transmitter is closed when the last <code>MidiTellMatch</code> is disconnected,
+     * unless a <code>LatencyCalibrator</code> is attached.
+     * @param tellMatch  a <code>MidiTellMatch</code> to disconnect.
+     */
+    public void disconnect(MidiTellMatch tellMatch) {
+        synchronized (IncomingMessageReceiver.class) {
+            tellMatches.remove(tellMatch);
+            closeIfUnused();
+            reindex();
+        }
+    }
 
     /**
-     * Constructs an instance of this class and sets it's owner.
-     * @param owner  a <code>MidiTellMatch</code> that owns this <code>IncomingMessageReceiver</code>
+     * Rebuilds the dispatch index, the SysEx automaton and the sequence matcher using the current
+     * <code>TellMatchRule</code>s of connected <code>MidiTellMatch</code>es, and publishes them at once.
+     * Must be called each time the trigger or the listening state of one of these is changed.
      */
-    public IncomingMessageReceiver(MidiTellMatch owner) {
-        this.owner = owner;
+    public void reindex() {
+        synchronized (IncomingMessageReceiver.class) {
+            //Each rule is read once, so all the parts of the routes are built from the same rules.
+            List<TellMatchRule> rules = new ArrayList<>();
+            for (MidiTellMatch tellMatch : tellMatches) {
+                rules.add(tellMatch.getRule());
+            }
+            List<List<MidiTellMatch>> buckets = new ArrayList<>(Collections.nCopies(128 * 128, null));
+            List<MidiTellMatch> newLongTriggers = new ArrayList<>();
+            List<MidiTellMatch> newListeners = new ArrayList<>();
+            for (int i = 0; i < tellMatches.size(); i++) {
+                MidiTellMatch tellMatch = tellMatches.get(i);
+                TellMatchRule rule = rules.get(i);
+                if (rule.isListening()) {
+                    newListeners.add(tellMatch);
+                }
+                TriggerPattern pattern = rule.getTriggerPattern();
+                if (pattern != null) {
+                    //A pattern is added to the bucket of each status and first data byte it could match.
+                    for (int status : pattern.getStatuses()) {
+                        for (int data1 = 0; data1 < 128; data1++) {
+                            if (pattern.matchesData1(data1)) {
+                                int key = indexOf(status, data1);
+                                if (buckets.get(key) == null) {
+                                    buckets.set(key, new ArrayList<>());
+                                }
+                                buckets.get(key).add(tellMatch);
+                            }
+                        }
+                    }
+                } else if (rule.getSysexPattern() == null && rule.getTriggerBytes() != null) {
+                    newLongTriggers.add(tellMatch);
+                }
+            }
+            MidiTellMatch[][] newIndex = new MidiTellMatch[128 * 128][];
+            for (int i = 0; i < newIndex.length; i++) {
+                newIndex[i] = buckets.get(i) == null ? SourceRoutes.NONE : buckets.get(i).toArray(SourceRoutes.NONE);
+            }
+            SysexAutomaton newAutomaton = new SysexAutomaton(tellMatches, rules);
+            SequenceMatcher newMatcher = new SequenceMatcher(tellMatches, rules, routes.getSequenceMatcher());
+            routes = new SourceRoutes(newIndex, newAutomaton.isEmpty() ? null : newAutomaton,
+                    newMatcher.isEmpty() ? null : newMatcher,
+                    newLongTriggers.toArray(SourceRoutes.NONE), newListeners.toArray(SourceRoutes.NONE));
+        }
     }
 
     /**
-     * Sets the first received message as owner's trigger Message if owner is listening,
-     * else sends received message to owner using it's <code>trySend()</code> method.
+     * Sets the first received message as trigger message of each listening <code>MidiTellMatch</code>,
+     * then sends received message to the <code>MidiTellMatch</code>es found in the dispatch index
+     * using their <code>trySend()</code> method. The latency compensation of outgoing messages is counted from
+     * the time of the incoming event, which is found from received timeStamp if the source has a clock.
      * @param message  a <code>MidiMessage</code> to process.
-     * @param timeStamp  a timeStamp that is used in the super class
-     * but did' not used in this implementation of <code>Receiver</code>
+     * @param timeStamp  the time of the event in the source's clock in microseconds, or -1.
      * */
     @Override
     public void send(MidiMessage message, long timeStamp) {
+        //The source's thread routes to all destinations, so a full output queue must never stop it.
+        DestinationOutput.markSharedThread();
+        long eventTime = toEventTime(timeStamp);
+        //The routes are read once, so the whole message is routed by the same snapshot.
+        SourceRoutes current = routes;
         //If we are listening on the source to set the trigger message,
-        //first arrived message will become the owner's trigger message.
-        if (owner.isListening()) {
+        //first arrived message will become the listening MidiTellMatch's trigger message.
+        for (MidiTellMatch listener : current.getListeners()) {
+            listen(listener, message);
+        }
+        if (message instanceof ShortMessage) {
+            //Short messages are compared as packed ints, so nothing is allocated here.
+            int packed = MessageDecoder.pack((ShortMessage) message);
+            if (packed >> 16 == ShortMessage.TIMING_CLOCK) {
+                tempo.clock(eventTime);
+            }
+            for (MidiTellMatch candidate : current.getCandidates(packed)) {
+                candidate.trySend(packed, eventTime);
+            }
+            SequenceMatcher matcher = current.getSequenceMatcher();
+            if (matcher != null) {
+                matcher.process(packed, eventTime);
+            }
+        } else if (message instanceof SysexMessage) {
+            LatencyCalibrator probes = calibrator;
+            if (probes != null && probes.received(message.getMessage(), eventTime)) {
+                return;
+            }
+            //Each byte of a SysEx message is examined once, no matter how many SysEx triggers exist.
+            SysexAutomaton automaton = current.getSysexAutomaton();
+            if (automaton != null) {
+                automaton.match(message.getMessage(), message.getLength(), eventTime);
+            }
+        } else {
+            for (MidiTellMatch candidate : current.getLongTriggers()) {
+                candidate.trySend(message, candidate.getInputChannel(), eventTime);
+            }
+        }
+    }
+
+    /**
+     * Converts received timeStamp from the source's clock to <code>System.nanoTime()</code>. If the source has
+     * no clock, or the timeStamp is missing or doesn't look right, the event is considered to happen now.
+     * @param timeStamp  the time of an event in the source's clock in microseconds, or -1.
+     * @return the time of the event, as <code>System.nanoTime()</code>.
+     */
+    private long toEventTime(long timeStamp) {
+        long now = System.nanoTime();
+        if (timeStamp < 0) {
+            return now;
+        }
+        long position = source.getMicrosecondPosition();
+        long age = position - timeStamp;
+        if (position < 0 || age < 0 || age > MAX_EVENT_AGE) {
+            return now;
+        }
+        return now - age * 1000;
+    }
+
+    /**
+     * Sets received message as the trigger message of received <code>MidiTellMatch</code>
+     * if it's MIDI-channel is correct or may be detected.
+     * @param owner  a listening <code>MidiTellMatch</code>.
+     * @param message  a <code>MidiMessage</code> which arrived from the source.
+     */
+    private void listen(MidiTellMatch owner, MidiMessage message) {
+        //The trigger is changed on the owner's thread, like any other change of a MidiTellMatch,
+        //and the new rule is published back to this thread.
+        owner.getOwner().runLater(() -> {
+            if (!owner.isListening()) {
+                return;
+            }
             byte detectedChannel = MessageDecoder.deCodeChannel(message.getStatus());
             if (owner.getInputChannel() != detectedChannel) {
                 if (owner.getDetectMidiChannel()) {
@@ -43,13 +264,37 @@ public class IncomingMessageReceiver  implements Receiver {
             } else {
                 owner.listen(message);
             }
-        } else {
-            owner.trySend(message, owner.getInputChannel());
-        }
+        });
     }
-    //I'm not sure do we actually need this.
+
+    /**
+     * Returns the index of a dispatch index bucket.
+     * @param status  the status byte of a short message.
+     * @param data1  the first data byte of a short message.
+     * @return an <code>int</code> which is the index of the bucket.
+     */
+    static int indexOf(int status, int data1) {
+        return ((status & 0x7F) << 7) | (data1 & 0x7F);
+    }
+
+    /**
+     * Returns the source of current <code>IncomingMessageReceiver</code>.
+     * @return a <code>MidiDevice</code> which is the source.
+     */
+    public MidiDevice getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the transmitter of the source which is connected to current <code>IncomingMessageReceiver</code>.
+     * @return the source's <code>Transmitter</code>.
+     */
+    public Transmitter getSourceTransmitter() {
+        return sourceTransmitter;
+    }
+
+    //The transmitter is closed by disconnect() when the last MidiTellMatch is gone.
     @Override
     public void close() {
     }
 }
-
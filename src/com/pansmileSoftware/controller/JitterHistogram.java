@@ -0,0 +1,91 @@
+package com.pansmileSoftware.controller;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts measured delays in buckets which are growing by powers of two: below 1 microsecond,
+ * 1-2, 2-4, 4-8 microseconds and so on, up to the last bucket which keeps everything longer than a second.
+ * Recording a delay takes one array increment, so it may be done by a MIDI thread for each message, while the GUI
+ * reads the buckets at any time.
+ * @see DestinationOutput
+ */
+public class JitterHistogram {
+    private static final int BUCKETS = 22;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private volatile long max;
+
+    /**
+     * Counts received delay in it's bucket.
+     * @param nanos  a delay in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        //The bucket is the number of significant bits of the delay in microseconds.
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    /**
+     * Returns the number of recorded delays.
+     * @return the number of delays.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket where received percentile of recorded delays is.
+     * @param percentile  a percentile from 0 to 100.
+     * @return a delay in microseconds, or 0 if nothing is recorded.
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * Returns the longest recorded delay.
+     * @return a delay in microseconds.
+     */
+    public long getMax() {
+        return max / 1000;
+    }
+
+    /**
+     * Forgets all recorded delays.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max = 0;
+    }
+
+    /**
+     * Creates a <code>String</code> describing the recorded delays.
+     * @return the number of delays, the median, the 99th percentile and the maximum.
+     */
+    @Override
+    public String toString() {
+        return getCount() + " recorded, p50 < " + getPercentile(50) + " us, p99 < " + getPercentile(99)
+                + " us, max " + getMax() + " us";
+    }
+}
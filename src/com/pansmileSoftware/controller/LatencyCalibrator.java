@@ -0,0 +1,143 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.SysexMessage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class measures the latency of destinations through a loop: probe messages are sent to a destination
+ * and are expected to come back from a source, which is connected to the destination by a cable or is
+ * a loopback port of the same driver. A probe is a short non-commercial SysEx message carrying it's number,
+ * which is sent through the destination's pooled output like any other message and is taken out by
+ * the source's <code>IncomingMessageReceiver</code> before routing, so it never triggers a <code>MidiTellMatch</code>.
+ * The round-trip time of each probe is counted from the moment it's queued to the time of the incoming event.
+ * Measuring blocks the calling thread, so it must not be run on the GUI thread.
+ * @see LatencyMeasurement
+ * @see IncomingMessageReceiver#attach(MidiDevice, LatencyCalibrator)
+ */
+public class LatencyCalibrator {
+    /**The default number of probes sent to each destination.*/
+    public static final int DEFAULT_PROBE_COUNT = 40;
+    //The time between probes, and the time to wait for the last probes after sending.
+    private static final long PROBE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(25);
+    private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(1000);
+    //A probe is F0 7D 'T' 'M' <run> <number high> <number low> F7.
+    private static final byte[] PROBE_HEADER = {(byte) 0xF0, 0x7D, 0x54, 0x4D};
+    private static final int PROBE_LENGTH = 8;
+    private static int runCount;
+
+    private final MidiDevice source;
+    private final int probeCount;
+    //The state of the current run. The arrays are written by the measuring thread before each probe is sent
+    //and by the source's thread when it comes back.
+    private volatile int run = -1;
+    private volatile AtomicLongArray sentAt;
+    private volatile AtomicLongArray roundTrips;
+    private final AtomicInteger receivedCount = new AtomicInteger();
+
+    /**
+     * Creates a calibrator which waits for the probes on received source.
+     * @param source  a <code>MidiDevice</code> where the probes come back.
+     * @param probeCount  the number of probes sent to each destination, up to 16384.
+     */
+    public LatencyCalibrator(MidiDevice source, int probeCount) {
+        this.source = source;
+        this.probeCount = Math.max(1, Math.min(1 << 14, probeCount));
+    }
+
+    /**
+     * Sends the probes to received destination and waits for them to come back from the source.
+     * @param destination  a <code>MidiDevice</code> to measure.
+     * @return a <code>LatencyMeasurement</code> of the destination.
+     * @throws MidiUnavailableException in case if the source or the destination is unavailable.
+     * @throws InterruptedException in case if the calling thread is interrupted.
+     */
+    public LatencyMeasurement measure(MidiDevice destination) throws MidiUnavailableException, InterruptedException {
+        if (!source.isOpen()) {
+            source.open();
+        }
+        IncomingMessageReceiver router = IncomingMessageReceiver.attach(source, this);
+        PooledReceiver output = ReceiverPool.acquire(destination);
+        try {
+            AtomicLongArray sent = new AtomicLongArray(probeCount);
+            AtomicLongArray trips = new AtomicLongArray(probeCount);
+            sentAt = sent;
+            roundTrips = trips;
+            receivedCount.set(0);
+            int currentRun = nextRun();
+            run = currentRun;
+            for (int i = 0; i < probeCount; i++) {
+                SysexMessage probe = createProbe(currentRun, i);
+                sent.set(i, System.nanoTime());
+                output.enqueue(probe, null, -1);
+                TimeUnit.NANOSECONDS.sleep(PROBE_INTERVAL);
+            }
+            long deadline = System.nanoTime() + TIMEOUT;
+            while (receivedCount.get() < probeCount && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+            run = -1;
+            //Collecting the round trips of the probes which came back.
+            long[] collected = new long[probeCount];
+            int count = 0;
+            for (int i = 0; i < probeCount; i++) {
+                if (trips.get(i) > 0) {
+                    collected[count++] = trips.get(i);
+                }
+            }
+            String name = destination.getDeviceInfo().getName();
+            return new LatencyMeasurement(name != null ? name : "not defined",
+                    Arrays.copyOf(collected, count), probeCount);
+        } finally {
+            run = -1;
+            ReceiverPool.release(output);
+            router.detach();
+        }
+    }
+
+    /**
+     * Checks if received SysEx message is a probe of the current run and counts it's round trip.
+     * Called by the source's thread.
+     * @param data  the bytes of an incoming SysEx message.
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.
+     * @return true if the message is a probe, so it must not be routed.
+     */
+    boolean received(byte[] data, long eventTime) {
+        if (data.length != PROBE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < PROBE_HEADER.length; i++) {
+            if (data[i] != PROBE_HEADER[i]) {
+                return false;
+            }
+        }
+        int number = (data[5] << 7) | data[6];
+        if (data[4] == run && number < probeCount && sentAt.get(number) != 0
+                && roundTrips.compareAndSet(number, 0, Math.max(1, (eventTime - sentAt.get(number)) / 1000))) {
+            receivedCount.incrementAndGet();
+        }
+        return true;
+    }
+
+    //Creates the probe with received number.
+    private static SysexMessage createProbe(int run, int number) {
+        byte[] data = {PROBE_HEADER[0], PROBE_HEADER[1], PROBE_HEADER[2], PROBE_HEADER[3],
+                (byte) run, (byte) (number >> 7), (byte) (number & 0x7F), (byte) 0xF7};
+        try {
+            return new SysexMessage(data, data.length);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //Returns the number of a new run, so probes which come late from a previous run are not counted.
+    private static synchronized int nextRun() {
+        runCount = (runCount + 1) & 0x7F;
+        return runCount;
+    }
+}
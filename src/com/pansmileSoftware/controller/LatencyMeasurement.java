@@ -0,0 +1,92 @@
+package com.pansmileSoftware.controller;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class keeps the result of calibrating one destination by a {@link LatencyCalibrator}: the round-trip
+ * times of the probes which came back and the number of probes which were sent.
+ * @see LatencyCalibrator
+ */
+public class LatencyMeasurement {
+    private final String destinationName;
+    //The round-trip times in microseconds, sorted.
+    private final long[] roundTrips;
+    private final int sentCount;
+
+    LatencyMeasurement(String destinationName, long[] roundTrips, int sentCount) {
+        this.destinationName = destinationName;
+        this.roundTrips = roundTrips.clone();
+        Arrays.sort(this.roundTrips);
+        this.sentCount = sentCount;
+    }
+
+    /**
+     * Returns received percentile of the round-trip times.
+     * @param percentile  a percentile from 0 to 100.
+     * @return a round-trip time in microseconds, or -1 if no probe came back.
+     */
+    public long getPercentile(double percentile) {
+        if (roundTrips.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(roundTrips.length * percentile / 100) - 1;
+        return roundTrips[Math.max(0, Math.min(roundTrips.length - 1, rank))];
+    }
+
+    /**
+     * Returns the number of probes which didn't come back in time.
+     * @return the number of lost probes.
+     */
+    public int getLostCount() {
+        return sentCount - roundTrips.length;
+    }
+
+    /**
+     * Returns true if enough probes came back to trust the measurement.
+     * @return true if at least half of the probes came back.
+     */
+    public boolean isValid() {
+        return roundTrips.length > 0 && roundTrips.length * 2 >= sentCount;
+    }
+
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    /**
+     * Proposes a compensation for each of received measurements, which were made through the same source.
+     * The latency of the source is the same in all of them, so delaying each destination by the difference between
+     * the slowest median round trip and it's own makes all destinations sound at the same time.
+     * @param measurements  a <code>List</code> of <code>LatencyMeasurement</code>s of different destinations.
+     * @return an array of compensations in microseconds, in the same order, or -1 for invalid measurements.
+     */
+    public static long[] proposeCompensations(List<LatencyMeasurement> measurements) {
+        long slowest = 0;
+        for (LatencyMeasurement measurement : measurements) {
+            if (measurement.isValid()) {
+                slowest = Math.max(slowest, measurement.getPercentile(50));
+            }
+        }
+        long[] compensations = new long[measurements.size()];
+        for (int i = 0; i < compensations.length; i++) {
+            LatencyMeasurement measurement = measurements.get(i);
+            compensations[i] = measurement.isValid() ? slowest - measurement.getPercentile(50) : -1;
+        }
+        return compensations;
+    }
+
+    /**
+     * Creates a <code>String</code> describing current <code>LatencyMeasurement</code>.
+     * @return the name of the destination, the percentiles of round-trip times and the number of lost probes.
+     */
+    @Override
+    public String toString() {
+        if (roundTrips.length == 0) {
+            return destinationName + ": no probes came back";
+        }
+        return String.format("%s: min %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms, lost %d of %d",
+                destinationName, roundTrips[0] / 1000.0, getPercentile(50) / 1000.0, getPercentile(90) / 1000.0,
+                getPercentile(99) / 1000.0, roundTrips[roundTrips.length - 1] / 1000.0, getLostCount(), sentCount);
+    }
+}
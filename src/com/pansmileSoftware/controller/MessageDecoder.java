@@ -1,6 +1,7 @@
 package com.pansmileSoftware.controller;
 
 import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
 import java.io.Serializable;
 
 /**
@@ -33,6 +34,17 @@ public class MessageDecoder implements Serializable {
         return String.valueOf(decodedMessage);
     }
 
+    /**
+     * Packs received <code>ShortMessage</code> into an <code>int</code> without copying it's data:
+     * the status byte takes bits 16-23, the first data byte takes bits 8-15 and the second one takes bits 0-7.
+     * Missing data bytes are packed as zeros.
+     * @param message  a <code>ShortMessage</code> to pack.
+     * @return an <code>int</code> which is the packed message.
+     */
+    public static int pack(ShortMessage message) {
+        return (message.getStatus() << 16) | (message.getData1() << 8) | message.getData2();
+    }
+
     /**
      * Decodes received <code>StatusByte</code> in order to get it's message's channel.
      * Channels numeration starts from 1 as in usual midi-apps.
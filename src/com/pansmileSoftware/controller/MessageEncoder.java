@@ -59,6 +59,24 @@ public class MessageEncoder {
         return encoded;
     }
 
+    /**
+     * Encodes received <code>String</code> to a <code>MidiMessage</code> defining it's type and midi-channel
+     * from the first byte of the <code>String</code>.
+     * @param toEncode  a <code>String</code> to encode.
+     * @param radix  a <code>byte</code> which is the radix of a
+     * numeric system used in the received <code>String</code>.
+     * @return a <code>MidiMessage</code> constructed using received data.
+     * @throws InvalidMidiDataException in case if encoding is failed because of wrong received data.
+     */
+    public static MidiMessage encode(String toEncode, byte radix) throws InvalidMidiDataException {
+        byte midiChannel = encodeChannel(toEncode, radix);
+        StatusByte statusByte = encodeStatus(toEncode, radix, midiChannel);
+        if (midiChannel == -1 || statusByte == StatusByte.WRONG) {
+            throw new InvalidMidiDataException("\nInvalid Data: \n" + toEncode);
+        }
+        return encode(toEncode, radix, statusByte, midiChannel);
+    }
+
     /**
      * Returns the type of a <code>MidiMessage</code> which could be encoded from received <code>String</code>.
      * @param toEncode  a <code>String</code> to encode.
@@ -94,6 +112,22 @@ public class MessageEncoder {
         else throw new InvalidMidiDataException("Fail to encode");
     }
 
+    /**
+     * Encodes a copy of received <code>ShortMessage</code> carrying received value. The value replaces the first
+     * data byte of Program Change and Channel Pressure messages and the second data byte of other messages.
+     * @param message  a <code>ShortMessage</code> to copy.
+     * @param value  a value from 0 to 127 to put into the message.
+     * @return <code>ShortMessage</code> constructed using received data.
+     * @throws InvalidMidiDataException in case if data is incorrect and construction is failed.
+     */
+    public static ShortMessage encodeValue(ShortMessage message, int value) throws InvalidMidiDataException {
+        int command = message.getCommand();
+        if (command == ShortMessage.PROGRAM_CHANGE || command == ShortMessage.CHANNEL_PRESSURE) {
+            return new ShortMessage(message.getStatus(), value, 0);
+        }
+        return new ShortMessage(message.getStatus(), message.getData1(), value);
+    }
+
     /**
      * Encodes the midi-channel of a <code>MidiMessage</code> which could be encoded from received <code>String</code>.
      * In case if data is incorrect returns -1.
@@ -1,48 +1,65 @@
 package com.pansmileSoftware.controller;
 
 import javax.sound.midi.MidiMessage;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
 
 /**This class provides detailed information about any MidiMessages caught by an instance of MidiMonitor.
  * Each time a message is caught a new instance of MessageInfo is constructing in one of MidiMonitor's SpyReceivers.
  * MessageInfo is used to populate {@link com.pansmileSoftware.view.MonitorView#monitorTable} with data each time
  * a MidiMessage is caught in {@link com.pansmileSoftware.view.MonitorView#monitor}.
+ * Capturing a message only keeps it's bytes, the <code>System.nanoTime()</code> when it was caught and the name of
+ * the device, which is shared by all messages of the device. The strings are made when the row is drawn,
+ * so messages which are never seen are never formatted, and the radix and the parts of the description
+ * are chosen at that time, so changing them affects all the captured messages.
  * @see MidiMonitor
  * @see SpyReceiver
  * @see SpyTransmitter
  * @see com.pansmileSoftware.view.MonitorView
  * @see MidiMessage
-}*/
+ }*/
 public class MessageInfo {
-    private String time;
-    private String deviceAlignment;
-    private String type;
-    private String channel;
-    private String messageData;
+    //The wall clock time and the System.nanoTime() at the same moment, used to convert the time of messages.
+    private static final long BASE_EPOCH_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private final byte[] data;
+    private final String deviceAlignment;
+    private volatile long nanoTime;
 
     /**
      * Constructs new <code>MessageInfo</code> with received data.
      * @param message  a <code>MidiMessage</code> to construct info about.
      * @param deviceAlignment  a <code>String</code> which is the name of a <code>MidiDevice</code> from where or
      * to where this message was sent.
-     * @param radix  a <code>byte</code> which is the radix of a numeric system which will be used to construct string
-     * representation of the message.
-     * @param showMessageData  a <code>boolean</code> which defines if the info will contain the message's data.
-     * @param showMessageInfo  a <code>boolean</code> which defines if the info will contain the message's description.
-     * @throws ArrayIndexOutOfBoundsException in case if received SysEx message is invalid.
      */
-    public MessageInfo(MidiMessage message, String deviceAlignment, byte radix,
-                       boolean showMessageData, boolean showMessageInfo) throws ArrayIndexOutOfBoundsException {
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_TIME;
-        time = (LocalDateTime.now().format(formatter));
+    public MessageInfo(MidiMessage message, String deviceAlignment) {
+        nanoTime = System.nanoTime();
+        data = message.getMessage();
         this.deviceAlignment = deviceAlignment;
-        StatusByte status = StatusByte.getMessageType(message);
-        type = status.getCommandType();
-        byte channelNumber = MessageDecoder.deCodeChannel(message.getStatus());
-        channel = String.valueOf(channelNumber);
-        this.messageData = MessageInfoLibrarian.getFullInfo(status, message , radix, showMessageData, showMessageInfo);
+    }
+
+    /**
+     * Constructs a <code>MessageInfo</code> which was read from a {@link CaptureLog}.
+     * @param data  the bytes of the message.
+     * @param deviceAlignment  the name of the device.
+     * @param nanoTime  the <code>System.nanoTime()</code> when the message arrived.
+     */
+    MessageInfo(byte[] data, String deviceAlignment, long nanoTime) {
+        this.data = data;
+        this.deviceAlignment = deviceAlignment;
+        this.nanoTime = nanoTime;
+    }
 
+    /**
+     * Returns the bytes of the message without copying them, so they are written to a {@link CaptureLog}.
+     * @return an array of the message's bytes, which must not be changed.
+     */
+    byte[] getData() {
+        return data;
     }
 
     /**
@@ -50,7 +67,7 @@ public class MessageInfo {
      * @return a <code>String</code> which is the midi-message's channel number.
      */
     public String getChannel() {
-        return channel;
+        return String.valueOf(MessageDecoder.deCodeChannel(data.length > 0 ? data[0] & 0xFF : 0));
     }
 
     /**
@@ -64,10 +81,20 @@ public class MessageInfo {
 
     /**
      * Returns the message data.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system which will be used to construct string
+     * representation of the message.
+     * @param showMessageData  a <code>boolean</code> which defines if the info will contain the message's data.
+     * @param showMessageInfo  a <code>boolean</code> which defines if the info will contain the message's description.
      * @return a <code>String</code> which is the message data.
      */
-    public String getMessage() {
-        return messageData;
+    public String getMessage(byte radix, boolean showMessageData, boolean showMessageInfo) {
+        RawMessage message = new RawMessage(data);
+        StatusByte status = StatusByte.getMessageType(message);
+        try {
+            return MessageInfoLibrarian.getFullInfo(status, message, radix, showMessageData, showMessageInfo);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return MessageDecoder.decode(message, radix);
+        }
     }
 
     /**
@@ -75,15 +102,24 @@ public class MessageInfo {
      * @return a <code>String</code> which is the time when the message arrived.
      */
     public String getTime() {
-        return time;
+        long epochNanos = BASE_EPOCH_NANOS + (nanoTime - BASE_NANOS);
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(0, epochNanos), ZoneId.systemDefault())
+                .format(DateTimeFormatter.ISO_TIME);
+    }
+
+    /**
+     * Returns the <code>System.nanoTime()</code> when the message arrived.
+     * @return the time in nanoseconds.
+     */
+    public long getNanoTime() {
+        return nanoTime;
     }
 
     /**
      * Resets the information about time when message arrived.
      */
     public void changeTime() {
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_TIME;
-        time = (LocalDateTime.now().format(formatter));
+        nanoTime = System.nanoTime();
     }
 
     /**
@@ -91,6 +127,32 @@ public class MessageInfo {
      * @return a <code>String</code> which is the type of the message.
      */
     public String getType() {
-        return type;
+        return StatusByte.getMessageType(new RawMessage(data)).getCommandType();
+    }
+
+    /**
+     * Formats all the columns of the monitor's table for current <code>MessageInfo</code>.
+     * @param radix  the radix of a numeric system which is used for the message's data.
+     * @param showMessageData  true if the data column contains the message's data.
+     * @param showMessageInfo  true if the data column contains the message's description.
+     * @return an array of the time, the device, the type, the channel and the data of the message.
+     */
+    public String[] toRow(byte radix, boolean showMessageData, boolean showMessageInfo) {
+        return new String[]{getTime(), deviceAlignment, getType(), getChannel(),
+                getMessage(radix, showMessageData, showMessageInfo)};
+    }
+
+    /**
+     * This class gives the captured bytes to the decoders, which read them as a <code>MidiMessage</code>.
+     */
+    private static class RawMessage extends MidiMessage {
+        RawMessage(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public Object clone() {
+            return new RawMessage(data);
+        }
     }
 }
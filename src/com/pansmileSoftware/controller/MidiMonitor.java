@@ -15,6 +15,7 @@ import java.util.*;
  */
 public class MidiMonitor {
     private ArrayList<SpyReceiver> receivers;
+    private MonitorTableModel model;
 
     /**
      * Constructs a <code>MidiMonitor</code> that will listen to sources and spy on destinations
@@ -30,6 +31,7 @@ public class MidiMonitor {
         if (!MessageInfoLibrarian.isIsInitialized()) {
             MessageInfoLibrarian.initialize();
         }
+        this.model = model;
         //initializing the list of current MIDI-MonitorView's receivers.
         receivers = new ArrayList<>();
 
@@ -75,32 +77,28 @@ public class MidiMonitor {
     }
 
     /**
-     * Sets the numeric system for MIDI-message data
+     * Sets the numeric system for MIDI-message data. It's a setting of the view, so it's applied to the messages
+     * which are already shown too.
      * @param radix  a radix of numeric system.
      */
     public void setRadix(byte radix) {
-        for (SpyReceiver receiver : receivers) {
-            receiver.setRadix(radix);
-        }
+        model.setRadix(radix);
     }
     /**
-     * Defines if the data of MIDI-messages will be shown in monitorTable.
+     * Defines if the data of MIDI-messages will be shown in monitorTable, including the messages
+     * which are already shown.
      * @param showMessageData  must be true if data should be visible.
      */
     public void setShowMessageData(boolean showMessageData) {
-        for (SpyReceiver receiver : receivers) {
-            receiver.setShowMessageData(showMessageData);
-        }
+        model.setShowMessageData(showMessageData);
     }
     /**
      * Defines if the detailed information about MIDI-messages will be shown in
-     * {@link com.pansmileSoftware.view.MonitorView#monitorTable}.
+     * {@link com.pansmileSoftware.view.MonitorView#monitorTable}, including the messages which are already shown.
      * @param showMessageInfo  must be true if detailed information should be visible.
      */
     public void setShowMessageInfo(boolean showMessageInfo) {
-        for (SpyReceiver receiver : receivers) {
-            receiver.setShowMessageInfo(showMessageInfo);
-        }
+        model.setShowMessageInfo(showMessageInfo);
     }
 
     /**
@@ -1,10 +1,9 @@
 package com.pansmileSoftware.controller;
 
-import com.pansmileSoftware.view.MainView;
-
 import javax.sound.midi.*;
-import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class provides a MIDI-message converter which can listen to the source
@@ -15,17 +14,36 @@ import java.util.*;
  * @see SpyTransmitter
  * @see SpyReceiver
  * @see StatusByte
- * @see MainView
+ * @see TellMatchListener
  */
 public class MidiTellMatch {
     private MidiDevice source;
     private ArrayList<MidiDevice> destinations;
     private IncomingMessageReceiver sourceReceiver;
-    private Transmitter sourceTransmitter;
     private SpyTransmitter destTransmitter;
     private MidiMessage triggerMessage;
     private MidiMessage outgoingMessage;
-    private boolean isTriggerShort = false;
+    private ValueTransform valueTransform;
+    private OutgoingMacro macro;
+    private TriggerLimiter limiter;
+    private NoteValue noteDelay;
+    //Batches of outgoing message and macro messages, indexed by the value of incoming message.
+    private MidiMessage[][] outgoingBatches;
+    //The batch which is sent without value transform.
+    private MidiMessage[] plainBatch;
+    private long[] batchDelays;
+    //The snapshot of the fields above which is read by the source's thread.
+    private volatile TellMatchRule rule = TellMatchRule.EMPTY;
+    //The number of failures which happened while sending.
+    private final AtomicInteger failures = new AtomicInteger();
+    //The number of batches which were sent.
+    private final AtomicLong sent = new AtomicLong();
+    //Compiled trigger which is compared with incoming short messages.
+    private TriggerPattern triggerPattern;
+    //Compiled trigger which is matched by the SysEx automaton of the source.
+    private SysexPattern sysexPattern;
+    //Compiled trigger which is matched by the sequence matcher of the source.
+    private SequenceTrigger sequenceTrigger;
     private String triggerString;
     private String outgoingString;
     private StatusByte triggerType;
@@ -41,17 +59,17 @@ public class MidiTellMatch {
     private byte outputChannel;
     public ArrayList<Integer> destinationsIndexes = new ArrayList<>();
     private boolean detectMidiChannel = true;
-    private MainView owner;
+    private TellMatchListener owner;
 
     /**
      * Creates new <code>MidiTellMatch</code> using received parameters.
      * @param source  a <code>MidiDevice</code> which will be used as source.
      * @param destinations an <code>ArrayList</code> of <code>MidiDevice</code>s which will be used as destinations.
-     * @param owner  a <code>MainView</code> that will own this <code>MidiTellMatch</code>.
+     * @param owner  a <code>TellMatchListener</code> that will own this <code>MidiTellMatch</code>.
      * @param radix  the radix that will be used for encoding and decoding MIDI-messages.
      * @throws MidiUnavailableException if source or some of destinations are unavailable.*/
     public MidiTellMatch(MidiDevice source, ArrayList<MidiDevice> destinations,
-                         MainView owner, byte radix) throws MidiUnavailableException {
+                         TellMatchListener owner, byte radix) throws MidiUnavailableException {
         this.owner = owner;
         this.source = source;
         openDevice(source);
@@ -62,58 +80,170 @@ public class MidiTellMatch {
         this.inputChannel = 1;
         this.outputChannel = 1;
         this.radix = radix;
-        sourceTransmitter = source.getTransmitter();
-        destTransmitter = new SpyTransmitter(destinations);
-        sourceReceiver = new IncomingMessageReceiver(this);
-        sourceTransmitter.setReceiver(sourceReceiver);
+        destTransmitter = new SpyTransmitter(destinations, this);
+        compileOutgoing();
+        sourceReceiver = IncomingMessageReceiver.connect(source, this);
         setIndices();
         name = "MIDI Tell-Match" + tellMatchCount++;
         isListening = false;
     }
 
+    /**
+     * Defines if incoming short message matches the trigger pattern and in case of matching
+     * tries to send outgoing message to destinations. Doesn't allocate anything until the message is matched.
+     * @see MessageDecoder#pack(ShortMessage)
+     * @see TriggerPattern#matches(int)
+     * @param packed  an incoming short message packed into an <code>int</code>.
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.*/
+    public void trySend(int packed, long eventTime) {
+        TellMatchRule current = rule;
+        TriggerPattern pattern = current.getTriggerPattern();
+        if (!current.isListening() && pattern != null && pattern.matches(packed)) {
+            send(current, current.getBatch(ValueTransform.valueOf(packed)), eventTime);
+        }
+    }
+
     /**
      * Defines if incoming message equals to trigger message and in case of equality
      * tries to send outgoing message to destinations.
      * @param message  a <code>MidiMessage</code> to check it's equality to <code>triggerMessage</code>.
-     * @param midiChannel*/
-    public void trySend(MidiMessage message, byte midiChannel) {
-        //If new incoming message is detected getting the data from trigger and incoming message.
-        if (triggerMessage != null) {
-            byte[] sourceData = message.getMessage();
-            byte[] triggerData = triggerMessage.getMessage();
+     * @param midiChannel
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.*/
+    public void trySend(MidiMessage message, byte midiChannel, long eventTime) {
+        TellMatchRule current = rule;
+        if (message instanceof ShortMessage) {
+            trySend(MessageDecoder.pack((ShortMessage) message), eventTime);
+        } else if (current.getTriggerBytes() != null && !current.isListening()
+                && Arrays.equals(current.getTriggerBytes(), message.getMessage())) {
+            send(current, current.getPlainBatch(), eventTime);
+        }
+    }
 
-            //Making the velocity of short messages similar if ignoreVelocity.
-            if (isTriggerShort && ignoreVelocity) {
-                sourceData[sourceData.length - 1] = 127;
-                triggerData[triggerData.length - 1] = 127;
-            }
+    /**
+     * Sends the outgoing message to destinations. Called by the <code>SysexAutomaton</code> of the source
+     * when an incoming SysEx message matches the SysEx trigger.
+     * @see SysexAutomaton#match(byte[], int, long)
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.
+     */
+    public void sendMatched(long eventTime) {
+        TellMatchRule current = rule;
+        if (!current.isListening()) {
+            send(current, current.getPlainBatch(), eventTime);
+        }
+    }
 
-            //Detecting equality of trigger and incoming messages and sending outgoing message to destinations.
-            if ((!isListening && Arrays.equals(triggerData, sourceData))) {
-                try {
-                    sendToDestinations();
-                } catch (MidiUnavailableException e) {
-                    JOptionPane.showMessageDialog(new JFrame(),"Some Destinations are unavailable" + '\n' + e);
-                }
-                catch (NullPointerException e) {
-                    JOptionPane.showMessageDialog(new JFrame(), "Define the outgoing message");
-                }
-            }
+    /**
+     * Sends the outgoing message to destinations. Called by the <code>SequenceMatcher</code> of the source
+     * when the last message of the sequence trigger arrives.
+     * @see SequenceMatcher#process(int, long)
+     * @param packed  the last message of the sequence packed into an <code>int</code>.
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.
+     */
+    public void sendMatched(int packed, long eventTime) {
+        TellMatchRule current = rule;
+        if (!current.isListening()) {
+            send(current, current.getBatch(ValueTransform.valueOf(packed)), eventTime);
+        }
+    }
+
+    //Sending outgoing messages to destinations.
+    private void send(TellMatchRule current, MidiMessage[] batch, long eventTime) {
+        if (!current.isAllowed(eventTime)) {
+            return;
+        }
+        //Failures are only reported here, so the source's thread never waits for the GUI.
+        //A MidiTellMatch without outgoing messages has nothing to send, so it isn't counted as sent.
+        if (batch == null || batch.length == 0) {
+            reportFailure("Define the outgoing message");
+            return;
         }
+        try {
+            sendToDestinations(current, batch, eventTime);
+            sent.incrementAndGet();
+        } catch (MidiUnavailableException e) {
+            reportFailure("Some Destinations are unavailable " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts a failure of current <code>MidiTellMatch</code> and puts it into the <code>RoutingErrors</code> queue.
+     * Never blocks, so it may be called from the source's thread.
+     * @param description  a <code>String</code> describing the failure.
+     */
+    public void reportFailure(String description) {
+        failures.incrementAndGet();
+        RoutingErrors.report(new RoutingError(name, description));
+    }
+
+    /**
+     * Returns the number of failures of current <code>MidiTellMatch</code> since it was created.
+     * @return the number of failures.
+     */
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the number of times current <code>MidiTellMatch</code> was triggered and has sent it's outgoing
+     * messages since it was created.
+     * @return the number of sent batches.
+     */
+    public long getSentCount() {
+        return sent.get();
     }
 
     /**
-     * Tries to send the outgoing message to destinations.
+     * Tries to send the outgoing message and the macro messages to destinations.
      * @throws MidiUnavailableException in case if any of destinations are unavailable.*/
     public void sendToDestinations() throws MidiUnavailableException {
-        if (outgoingMessage != null) {
-            destTransmitter.send(outgoingMessage, latencyComp);
+        TellMatchRule current = rule;
+        sendToDestinations(current, current.getPlainBatch(), System.nanoTime());
+    }
+
+    /**
+     * Tries to send received batch of messages to destinations. The batch is delayed by the macro delays
+     * of received rule, which are counted from the time of the incoming event.
+     * @param current  the <code>TellMatchRule</code> which the batch belongs to.
+     * @param batch  an array of <code>MidiMessage</code>s to send.
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.
+     * @throws MidiUnavailableException in case if any of destinations are unavailable.*/
+    private void sendToDestinations(TellMatchRule current, MidiMessage[] batch, long eventTime)
+            throws MidiUnavailableException {
+        //The tempo is read once, so the delay and the rescaling of the scheduler agree.
+        long quarterNanos = current.getQuarterNanos();
+        TempoTracker tempo = quarterNanos > 0 ? current.getTempo() : null;
+        long delay = current.getDelay(quarterNanos);
+        //Even a single message is sent as a batch, so it keeps it's step delay and no array is created for it.
+        if (batch.length > 0) {
+            destTransmitter.send(batch, current.getBatchDelays(), delay, eventTime, tempo, quarterNanos);
         }
     }
 
+    /**
+     * Compiles current state of the trigger, the outgoing batches, the latency compensation and the listening
+     * state into a new <code>TellMatchRule</code> and publishes it to the source's thread.
+     * Must be called each time one of these is changed.
+     */
+    private void publish() {
+        byte[] triggerBytes = triggerMessage != null && !(triggerMessage instanceof ShortMessage)
+                ? triggerMessage.getMessage() : null;
+        rule = new TellMatchRule(triggerPattern, triggerBytes, sysexPattern, sequenceTrigger, outgoingBatches,
+                plainBatch, batchDelays, latencyComp, noteDelay, TempoTracker.of(source), limiter, isListening);
+    }
+
+    /**
+     * Returns the <code>TellMatchRule</code> which was published last, so the source's routes are built from
+     * the same snapshot which answers incoming messages.
+     * @return the current <code>TellMatchRule</code>.
+     */
+    TellMatchRule getRule() {
+        return rule;
+    }
+
     /**
      * Sets the latencyComp - an amount of time in Microseconds that determines the delay before sending
-     * the outgoingMessage to destination.
+     * the outgoingMessage to destination. It's applied to all destinations, each of them adds it's own
+     * compensation from {@link DestinationSettings#getCompensation()}.
      * @param comp  a <code>Double</code> which is an amount of time in milliseconds to convert in microseconds.
      */
     public void setLatencyComp(Double comp) {
@@ -123,37 +253,38 @@ public class MidiTellMatch {
         else {
             latencyComp = (long) (comp * 1000/ 1);
         }
+        publish();
     }
 
     /**
      * Provides the Listen function. Sets received <code>MidiMessage</code> as a trigger and rewrites all
      * information connected to it.
-     * Also redraws owner's GUI elements connected to triggerMessage.
-     * If only current <code>MidiTellMatch</code> is listening, stops listening.
+     * Stops listening and tells the owner about the new trigger, so it could redraw it's GUI elements.
      * @param message  a <code>MidiMessage</code> to set as triggerMessage.
      */
     public void listen(MidiMessage message){
         triggerString = MessageDecoder.decode(message,radix);
         triggerType = StatusByte.getMessageType(message);
         setTriggerMessage(message);
-        owner.redrawTriggerGUIElements();
         setListening(false);
-        if (!owner.someOneIsListening()) {
-            owner.getListenButton().setSelected(false);
-        }
+        owner.triggerListened(this);
     }
 
     /**
-     * Tells owner to show a <code>Dialog</code>, showing that listening was failed
-     * because of wrong MIDI-channel in incoming message.
+     * Tells owner that listening was failed because of wrong MIDI-channel in incoming message.
      * @param requiredChannel  a <code>byte</code> which is the number of expected channel.
      * @param detectedChannel  a <code>byte</code> which is the actual detected channel.
      */
     public void listeningFailed(byte requiredChannel, byte detectedChannel) {
-        owner.showWrongChannelDialog(requiredChannel, detectedChannel);
-        if (!owner.someOneIsListening()) {
-            owner.getListenButton().setSelected(false);
-        }
+        owner.listeningFailed(this, requiredChannel, detectedChannel);
+    }
+
+    /**
+     * Returns the owner of current <code>MidiTellMatch</code>.
+     * @return a <code>TellMatchListener</code> which owns current <code>MidiTellMatch</code>.
+     */
+    public TellMatchListener getOwner() {
+        return owner;
     }
 
 
@@ -236,12 +367,20 @@ public class MidiTellMatch {
      * @throws MidiUnavailableException in case if new source is unavailable.
      * */
     public void setSource(MidiDevice source) throws MidiUnavailableException {
-        sourceTransmitter.close();
-        sourceReceiver.close();
+        sourceReceiver.disconnect(this);
         this.source = source;
-        sourceTransmitter = source.getTransmitter();
-        sourceReceiver = new IncomingMessageReceiver(this);
-        sourceTransmitter.setReceiver(sourceReceiver);
+        sourceReceiver = IncomingMessageReceiver.connect(source, this);
+        //The note delay follows the tempo of the new source.
+        publish();
+    }
+
+    /**
+     * Disconnects current <code>MidiTellMatch</code> from it's source to prevent it from continue working,
+     * and releases the receivers of it's destinations.
+     */
+    public void disconnect() {
+        sourceReceiver.disconnect(this);
+        destTransmitter.releaseDestinations();
     }
 
     /**
@@ -260,6 +399,8 @@ public class MidiTellMatch {
      */
     public void setListening(boolean listening) {
         isListening = listening;
+        publish();
+        sourceReceiver.reindex();
     }
 
     /**
@@ -290,16 +431,113 @@ public class MidiTellMatch {
      */
     public void setTriggerMessage(MidiMessage message) {
         this.triggerMessage = message;
+        if (triggerMessage == null) {
+            compileTrigger();
+            return;
+        }
         byte newChannel = MessageDecoder.deCodeChannel(triggerMessage.getStatus());
         if (newChannel != inputChannel) {
             inputChannel = newChannel;
         }
-        for (StatusByte triggerStatus : StatusByte.getShortList()) {
-            if (triggerStatus.getStatusByte(inputChannel) == triggerMessage.getStatus()) {
-                isTriggerShort = true;
-                break;
-            }
+        compileTrigger();
+    }
+
+    /**
+     * Compiles the trigger message into a <code>TriggerPattern</code> or a <code>SysexPattern</code>.
+     * The velocity byte matches any value in case if ignoreVelocity is true.
+     * Rebuilds the dispatch index of the source after that.
+     */
+    private void compileTrigger() {
+        triggerPattern = null;
+        sysexPattern = null;
+        sequenceTrigger = null;
+        if (triggerMessage instanceof ShortMessage) {
+            triggerPattern = TriggerPattern.of((ShortMessage) triggerMessage, ignoreVelocity);
+        } else if (triggerMessage instanceof SysexMessage) {
+            sysexPattern = SysexPattern.of(triggerMessage);
         }
+        publish();
+        sourceReceiver.reindex();
+    }
+
+    /**
+     * Sets received <code>TriggerPattern</code> as the trigger of current <code>MidiTellMatch</code>
+     * instead of a trigger message, and fills all fields connected to the trigger according to this pattern.
+     * @param pattern  a <code>TriggerPattern</code> to set as trigger.
+     * @param patternString  a <code>String</code> representation of the pattern.
+     */
+    public void setTriggerPattern(TriggerPattern pattern, String patternString) {
+        triggerMessage = null;
+        triggerPattern = pattern;
+        sysexPattern = null;
+        sequenceTrigger = null;
+        triggerString = patternString;
+        triggerType = pattern.getType();
+        inputChannel = pattern.getFirstChannel();
+        publish();
+        sourceReceiver.reindex();
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s compiled trigger.
+     * @return a <code>TriggerPattern</code> which is compared with incoming short messages,
+     * or null if the trigger is not a short message.
+     */
+    public TriggerPattern getTriggerPattern() {
+        return triggerPattern;
+    }
+
+    /**
+     * Sets received <code>SysexPattern</code> as the trigger of current <code>MidiTellMatch</code>
+     * instead of a trigger message, and fills all fields connected to the trigger according to this pattern.
+     * @param pattern  a <code>SysexPattern</code> to set as trigger.
+     * @param patternString  a <code>String</code> representation of the pattern.
+     */
+    public void setSysexPattern(SysexPattern pattern, String patternString) {
+        triggerMessage = null;
+        triggerPattern = null;
+        sysexPattern = pattern;
+        sequenceTrigger = null;
+        triggerString = patternString;
+        triggerType = StatusByte.SYSTEM_EXCLUSIVE;
+        publish();
+        sourceReceiver.reindex();
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s compiled SysEx trigger.
+     * @return a <code>SysexPattern</code> which is matched against incoming SysEx messages,
+     * or null if the trigger is not a SysEx message.
+     */
+    public SysexPattern getSysexPattern() {
+        return sysexPattern;
+    }
+
+    /**
+     * Sets received <code>SequenceTrigger</code> as the trigger of current <code>MidiTellMatch</code>
+     * instead of a trigger message, and fills all fields connected to the trigger according to the last
+     * message of the sequence.
+     * @param sequence  a <code>SequenceTrigger</code> to set as trigger.
+     * @param sequenceString  a <code>String</code> representation of the sequence.
+     */
+    public void setSequenceTrigger(SequenceTrigger sequence, String sequenceString) {
+        triggerMessage = null;
+        triggerPattern = null;
+        sysexPattern = null;
+        sequenceTrigger = sequence;
+        triggerString = sequenceString;
+        triggerType = sequence.getType();
+        inputChannel = sequence.getFirstChannel();
+        publish();
+        sourceReceiver.reindex();
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s sequence trigger.
+     * @return a <code>SequenceTrigger</code>, or null if the trigger is not a sequence.
+     */
+    public SequenceTrigger getSequenceTrigger() {
+        return sequenceTrigger;
     }
 
     /**
@@ -351,6 +589,112 @@ public class MidiTellMatch {
      */
     public void setOutgoingMessage(MidiMessage message) {
         outgoingMessage = message;
+        compileOutgoing();
+    }
+
+    /**
+     * Sets current <code>MidiTellMatch</code>'s value transform. In case if it's not null, the value byte
+     * of outgoing message is replaced with the transformed value of incoming message.
+     * @param valueTransform  a <code>ValueTransform</code> to set, or null to send the outgoing message as is.
+     */
+    public void setValueTransform(ValueTransform valueTransform) {
+        this.valueTransform = valueTransform;
+        compileOutgoing();
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s value transform.
+     * @return a <code>ValueTransform</code>, or null if the outgoing message is sent as is.
+     */
+    public ValueTransform getValueTransform() {
+        return valueTransform;
+    }
+
+    /**
+     * Sets current <code>MidiTellMatch</code>'s macro, which messages are sent after the outgoing message.
+     * @param macro  an <code>OutgoingMacro</code> to set, or null to send the outgoing message only.
+     */
+    public void setMacro(OutgoingMacro macro) {
+        this.macro = macro;
+        compileOutgoing();
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s macro.
+     * @return an <code>OutgoingMacro</code>, or null if only the outgoing message is sent.
+     */
+    public OutgoingMacro getMacro() {
+        return macro;
+    }
+
+    /**
+     * Sets current <code>MidiTellMatch</code>'s limits of sending: debounce, minimum interval and maximum rate.
+     * @param limiter  a <code>TriggerLimiter</code> to set, or null to send on every trigger.
+     */
+    public void setLimiter(TriggerLimiter limiter) {
+        this.limiter = limiter;
+        publish();
+    }
+
+    /**
+     * Sets current <code>MidiTellMatch</code>'s delay in musical units, which follows the tempo measured from
+     * the Timing Clock of the source. While the tempo is unknown, the latency compensation is used instead.
+     * @param noteDelay  a <code>NoteValue</code> to set, or null to use the latency compensation only.
+     */
+    public void setNoteDelay(NoteValue noteDelay) {
+        this.noteDelay = noteDelay;
+        publish();
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s delay in musical units.
+     * @return a <code>NoteValue</code>, or null if the latency compensation is used.
+     */
+    public NoteValue getNoteDelay() {
+        return noteDelay;
+    }
+
+    /**
+     * Returns current <code>MidiTellMatch</code>'s limits of sending.
+     * @return a <code>TriggerLimiter</code>, or null if the outgoing messages are sent on every trigger.
+     */
+    public TriggerLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Prepares the batches of messages which are sent when the trigger is matched: the outgoing message followed
+     * by the macro messages. In case if there is a value transform, 128 batches are prepared, each carrying
+     * a transformed value, so no message is encoded while sending. Only short outgoing messages could be transformed.
+     */
+    private void compileOutgoing() {
+        MidiMessage[] macroMessages = macro != null ? macro.getMessages() : new MidiMessage[0];
+        long[] macroDelays = macro != null ? macro.getDelays() : new long[0];
+        int head = outgoingMessage != null ? 1 : 0;
+        MidiMessage[] plain = new MidiMessage[head + macroMessages.length];
+        long[] delays = new long[plain.length];
+        System.arraycopy(macroMessages, 0, plain, head, macroMessages.length);
+        System.arraycopy(macroDelays, 0, delays, head, macroDelays.length);
+        if (head == 1) {
+            plain[0] = outgoingMessage;
+        }
+        MidiMessage[][] batches = new MidiMessage[128][];
+        Arrays.fill(batches, plain);
+        if (valueTransform != null && outgoingMessage instanceof ShortMessage) {
+            try {
+                for (int value = 0; value < 128; value++) {
+                    batches[value] = plain.clone();
+                    batches[value][0] = MessageEncoder.encodeValue((ShortMessage) outgoingMessage,
+                            valueTransform.apply(value));
+                }
+            } catch (InvalidMidiDataException e) {
+                Arrays.fill(batches, plain);
+            }
+        }
+        batchDelays = delays;
+        plainBatch = plain;
+        outgoingBatches = batches;
+        publish();
     }
 
     /**
@@ -456,6 +800,10 @@ public class MidiTellMatch {
      */
     public void setIgnoreVelocity(boolean ignoreVelocity) {
         this.ignoreVelocity = ignoreVelocity;
+        //Trigger patterns define the velocity by themselves.
+        if (triggerMessage != null) {
+            compileTrigger();
+        }
     }
 
     /**
@@ -499,11 +847,11 @@ public class MidiTellMatch {
     }
 
     /**
-     * Returns current <code>MidiTellMatch</code>'s source transmitter.
-     * @return current <code>MidiTellMatch</code>'s source transmitter.
+     * Returns the receiver which routes the messages from current <code>MidiTellMatch</code>'s source.
+     * @return current <code>MidiTellMatch</code>'s source receiver.
      */
-    public Transmitter getSourceTransmitter() {
-        return sourceTransmitter;
+    public IncomingMessageReceiver getSourceReceiver() {
+        return sourceReceiver;
     }
 
     /**
@@ -549,12 +897,14 @@ public class MidiTellMatch {
                 inputChannel = channel;
                 triggerType = status;
                 triggerString = msg;
+                compileTrigger();
                 return;
             case "outgoing" :
                 outgoingMessage = message;
                 outputChannel = channel;
                 outgoingType = status;
                 outgoingString = msg;
+                compileOutgoing();
         }
     }
 
@@ -603,6 +953,18 @@ public class MidiTellMatch {
         info.add(String.valueOf(radix + "\n"));
         info.add(ignoreVelocity + "\n");
         info.add(latencyComp/1000 + "\n");
+        if (valueTransform != null) {
+            info.add("@transform " + valueTransform + "\n");
+        }
+        if (macro != null) {
+            info.add("@macro " + macro.toString(radix) + "\n");
+        }
+        if (limiter != null) {
+            info.add("@limits " + limiter + "\n");
+        }
+        if (noteDelay != null) {
+            info.add("@delay " + noteDelay + "\n");
+        }
 
         return info;
     }
@@ -0,0 +1,72 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+/**
+ * This class provides a musical length, which is converted to time using the tempo of a source.
+ * A note value is written as a fraction of a whole note, optionally followed by <code>.</code> for a dotted note
+ * or <code>t</code> for a triplet, for example <code>1/8</code>, <code>1/16.</code>, <code>1/4t</code>
+ * or <code>3/4</code>. All numbers are decimal.
+ * @see TempoTracker
+ * @see MidiTellMatch#setNoteDelay(NoteValue)
+ */
+public class NoteValue {
+    private final String spec;
+    //The length in quarter notes.
+    private final double quarters;
+
+    private NoteValue(String spec, double quarters) {
+        this.spec = spec;
+        this.quarters = quarters;
+    }
+
+    /**
+     * Compiles received <code>String</code> to a <code>NoteValue</code>.
+     * @param spec  a <code>String</code> to compile.
+     * @return a compiled <code>NoteValue</code>.
+     * @throws InvalidMidiDataException in case if received <code>String</code> is incorrect.
+     */
+    public static NoteValue compile(String spec) throws InvalidMidiDataException {
+        String value = spec.trim();
+        double multiplier = 1;
+        if (value.endsWith(".")) {
+            multiplier = 1.5;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("t")) {
+            multiplier = 2.0 / 3;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            String[] parts = value.split("/");
+            if (parts.length != 2) {
+                throw new NumberFormatException();
+            }
+            int numerator = Integer.parseInt(parts[0].trim());
+            int denominator = Integer.parseInt(parts[1].trim());
+            if (numerator <= 0 || denominator <= 0) {
+                throw new NumberFormatException();
+            }
+            return new NoteValue(spec.trim(), 4.0 * numerator / denominator * multiplier);
+        } catch (NumberFormatException e) {
+            throw new InvalidMidiDataException("\nInvalid Note Value: \n" + spec);
+        }
+    }
+
+    /**
+     * Returns the length of current <code>NoteValue</code> at received tempo.
+     * @param quarterNanos  the length of a quarter note in nanoseconds.
+     * @return the length in microseconds.
+     */
+    public long toMicros(long quarterNanos) {
+        return (long) (quarters * quarterNanos / 1000);
+    }
+
+    /**
+     * Returns the <code>String</code> which current <code>NoteValue</code> was compiled from.
+     * @return a <code>String</code> representation of current <code>NoteValue</code>.
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
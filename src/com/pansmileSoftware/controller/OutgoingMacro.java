@@ -0,0 +1,88 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+
+/**
+ * This class provides an ordered list of messages which are sent after the outgoing message of a
+ * <code>MidiTellMatch</code>. A macro is written as a list of messages separated by <code>;</code>. Each message
+ * may start with a delay in milliseconds after the previous message, written as <code>+20</code>.
+ * For example <code>c0 5; +20 b0 7 64; b0 a 40</code>.
+ * All messages are encoded once when the macro is compiled and are never changed after that.
+ * @see MidiTellMatch
+ * @see MessageEncoder
+ * @see SpyTransmitter#send(MidiMessage[], long[], long, long, TempoTracker, long)
+ */
+public class OutgoingMacro {
+    private final MidiMessage[] messages;
+    private final long[] delays;
+
+    private OutgoingMacro(MidiMessage[] messages, long[] delays) {
+        this.messages = messages;
+        this.delays = delays;
+    }
+
+    /**
+     * Compiles received <code>String</code> to an <code>OutgoingMacro</code>.
+     * @param spec  a <code>String</code> to compile.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system used in the received macro.
+     * @return a compiled <code>OutgoingMacro</code>.
+     * @throws InvalidMidiDataException in case if any of messages is incorrect.
+     */
+    public static OutgoingMacro compile(String spec, byte radix) throws InvalidMidiDataException {
+        String[] steps = spec.trim().split("\\s*;\\s*");
+        MidiMessage[] messages = new MidiMessage[steps.length];
+        long[] delays = new long[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            String step = steps[i];
+            if (step.startsWith("+")) {
+                int split = step.indexOf(' ');
+                try {
+                    delays[i] = (long) (Double.parseDouble(step.substring(1, split)) * 1000);
+                } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                    throw new InvalidMidiDataException("\nInvalid Macro: \nWrong delay in " + step);
+                }
+                step = step.substring(split + 1).trim();
+            }
+            messages[i] = MessageEncoder.encode(step.replaceAll("\\s+", " "), radix);
+        }
+        return new OutgoingMacro(messages, delays);
+    }
+
+    /**
+     * Returns the messages of current <code>OutgoingMacro</code>.
+     * @return an array of <code>MidiMessage</code>s in the order they must be sent.
+     */
+    public MidiMessage[] getMessages() {
+        return messages.clone();
+    }
+
+    /**
+     * Returns the delays of current <code>OutgoingMacro</code>'s messages.
+     * @return an array of delays in microseconds. Each delay is counted from the previous message.
+     */
+    public long[] getDelays() {
+        return delays.clone();
+    }
+
+    /**
+     * Creates a <code>String</code> representation of current <code>OutgoingMacro</code>, which can be compiled
+     * back using the same radix.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system.
+     * @return a <code>String</code> representation of current <code>OutgoingMacro</code>.
+     */
+    public String toString(byte radix) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < messages.length; i++) {
+            if (i > 0) {
+                builder.append("; ");
+            }
+            if (delays[i] > 0) {
+                builder.append("+").append(delays[i] % 1000 == 0 ? String.valueOf(delays[i] / 1000)
+                        : String.valueOf(delays[i] / 1000.0)).append(" ");
+            }
+            builder.append(MessageDecoder.decode(messages[i], radix).trim());
+        }
+        return String.valueOf(builder);
+    }
+}
@@ -0,0 +1,32 @@
+package com.pansmileSoftware.controller;
+
+/**
+ * This is the enum of the ways a {@link DestinationOutput} handles a new message when it's queue is full.
+ * @see DestinationOutput
+ * @see DestinationSettings
+ */
+public enum OverflowPolicy {
+    /**The oldest message in the queue is dropped to make room for the new one.*/
+    DROP_OLDEST("Drop oldest"),
+    /**The new message replaces a queued message of the same controller, pitch bend or pressure on the same
+     * channel. If there is no such message, the oldest one is dropped.*/
+    COALESCE("Coalesce"),
+    /**The sender waits until there is room in the queue. The scheduler's thread and the threads of sources are
+     * shared by all destinations, so they never wait: the oldest message is dropped for them instead.*/
+    BLOCK("Block");
+
+    private final String name;
+
+    OverflowPolicy(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of current <code>OverflowPolicy</code> which is shown to the user.
+     * @return a <code>String</code> representation of current <code>OverflowPolicy</code>.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
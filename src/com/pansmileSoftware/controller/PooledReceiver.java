@@ -0,0 +1,180 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Synthesizer;
+
+/**
+ * This class is the only <code>Receiver</code> of a destination device which is used by all
+ * <code>MidiTellMatch</code>es sending to this device. The device's receiver is got once, when the first message
+ * is sent, and is closed by the {@link ReceiverPool} when no <code>MidiTellMatch</code> uses the device anymore.
+ * If the device is unavailable, getting the receiver is tried again with the next message.
+ * Messages sent after the receiver is closed, for example delayed ones, are dropped.
+ * The messages of all users are queued in the device's {@link DestinationOutput}, which writer thread is the only
+ * one calling {@link #send(MidiMessage)}.
+ * @see ReceiverPool
+ * @see SpyTransmitter
+ */
+public class PooledReceiver {
+    private final MidiDevice device;
+    private volatile Receiver receiver;
+    private volatile boolean isClosed;
+    private final DestinationSettings settings;
+    private final DestinationOutput output;
+    /**The number of users of current <code>PooledReceiver</code>. Guarded by the <code>ReceiverPool</code>.*/
+    int users;
+
+    PooledReceiver(MidiDevice device) {
+        this.device = device;
+        settings = DestinationSettings.of(device);
+        output = new DestinationOutput(this, settings);
+    }
+
+    /**
+     * Puts received message into the device's output queue. Returns without waiting for the device.
+     * @param message  a <code>MidiMessage</code> to send.
+     * @param sender  the <code>MidiTellMatch</code> which failures are counted, or null.
+     * @param deadline  the <code>System.nanoTime()</code> when the device must send the message,
+     * or -1 to send it at once.
+     */
+    public void enqueue(MidiMessage message, MidiTellMatch sender, long deadline) {
+        if (!isClosed) {
+            output.offer(message, sender, deadline);
+        }
+    }
+
+    /**
+     * Returns true if messages with a deadline may be given to the device in advance: the device honours
+     * timestamps, the timestamped output is enabled in the device's settings, and the device is open and has
+     * it's own clock.
+     * @return true if the device sends timestamped messages itself.
+     * @see #isTimestampCapable(MidiDevice)
+     */
+    public boolean isTimestamped() {
+        return settings.isTimestamped() && isTimestampCapable(device) && device.isOpen()
+                && device.getMicrosecondPosition() >= 0;
+    }
+
+    /**
+     * Returns true if received device schedules received messages by their timestamps. Only a
+     * <code>Synthesizer</code> does it: the receivers of hardware MIDI ports send every message at once, ignoring
+     * the timestamp, so delayed messages are always waited for by the <code>DelayScheduler</code> for them.
+     * @param device  a destination <code>MidiDevice</code>.
+     * @return true if the device honours timestamps.
+     */
+    public static boolean isTimestampCapable(MidiDevice device) {
+        return device instanceof Synthesizer;
+    }
+
+    /**
+     * Returns the time which every message is delayed by before it's sent to the device.
+     * @return the latency compensation of the device in microseconds.
+     * @see DestinationSettings#getCompensation()
+     */
+    public long getCompensation() {
+        return settings.getCompensation();
+    }
+
+    /**
+     * Sends received message to the device, opening it and getting it's receiver if it's not done yet.
+     * @param message  a <code>MidiMessage</code> to send.
+     * @throws MidiUnavailableException in case if the device is unavailable.
+     */
+    public void send(MidiMessage message) throws MidiUnavailableException {
+        send(message, -1L, false);
+    }
+
+    /**
+     * Sends received message to the device with a timestamp in the device's clock, which is counted from
+     * received deadline, so the device sends the message at the deadline.
+     * @param message  a <code>MidiMessage</code> to send.
+     * @param deadline  the <code>System.nanoTime()</code> when the device must send the message.
+     * @return false if the device has no clock, so the message was not sent.
+     * @throws MidiUnavailableException in case if the device is unavailable.
+     */
+    public boolean send(MidiMessage message, long deadline) throws MidiUnavailableException {
+        return send(message, deadline, true);
+    }
+
+    //Sends the message with a timestamp if it's required.
+    private boolean send(MidiMessage message, long deadline, boolean isTimed) throws MidiUnavailableException {
+        Receiver current = receiver;
+        if (current == null) {
+            current = open();
+            if (current == null) {
+                return true;
+            }
+        }
+        long timeStamp = -1;
+        if (isTimed) {
+            //Converting the deadline to the device's clock, which is counted in microseconds.
+            long position = device.getMicrosecondPosition();
+            if (position < 0) {
+                return false;
+            }
+            timeStamp = position + Math.max(0, (deadline - System.nanoTime()) / 1000);
+        }
+        try {
+            current.send(message, timeStamp);
+        } catch (IllegalStateException e) {
+            //The receiver was closed while sending. If the device was closed and not the pool,
+            //a new receiver is got for the message.
+            if (!isClosed) {
+                reset(current);
+                current = open();
+                if (current != null) {
+                    current.send(message, timeStamp);
+                }
+            }
+        }
+        return true;
+    }
+
+    //Forgets the receiver which became unusable, unless another thread has already done it.
+    private synchronized void reset(Receiver stale) {
+        if (receiver == stale) {
+            receiver = null;
+        }
+    }
+
+    //Opens the device and gets it's receiver once for all threads.
+    private synchronized Receiver open() throws MidiUnavailableException {
+        if (receiver == null && !isClosed) {
+            if (!device.isOpen()) {
+                device.open();
+            }
+            receiver = device.getReceiver();
+        }
+        return receiver;
+    }
+
+    /**
+     * Closes the device's receiver. Current <code>PooledReceiver</code> can't be used after that.
+     */
+    synchronized void close() {
+        isClosed = true;
+        output.stop();
+        if (receiver != null) {
+            receiver.close();
+            receiver = null;
+        }
+    }
+
+    /**
+     * Returns the destination device of current <code>PooledReceiver</code>.
+     * @return a <code>MidiDevice</code> which is the destination.
+     */
+    public MidiDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * Returns the output queue of the device.
+     * @return the <code>DestinationOutput</code> of current <code>PooledReceiver</code>.
+     */
+    public DestinationOutput getOutput() {
+        return output;
+    }
+}
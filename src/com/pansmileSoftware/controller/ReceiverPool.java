@@ -0,0 +1,73 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiDevice;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This static class keeps one {@link PooledReceiver} for each destination device, so sending a message never
+ * gets a new <code>Receiver</code> from Java Sound. Each <code>SpyTransmitter</code> acquires the receivers of it's
+ * destinations and releases them when the destinations are changed or the <code>MidiTellMatch</code> is removed.
+ * A receiver is closed when it's last user releases it.
+ * @see PooledReceiver
+ * @see SpyTransmitter
+ */
+public class ReceiverPool {
+    private static final Map<MidiDevice, PooledReceiver> POOL = new HashMap<>();
+
+    private ReceiverPool() {
+    }
+
+    /**
+     * Returns the <code>PooledReceiver</code> of received device and counts one more user of it.
+     * @param device  a destination <code>MidiDevice</code>.
+     * @return the <code>PooledReceiver</code> of the device.
+     */
+    public static synchronized PooledReceiver acquire(MidiDevice device) {
+        PooledReceiver receiver = POOL.get(device);
+        if (receiver == null) {
+            receiver = new PooledReceiver(device);
+            POOL.put(device, receiver);
+        }
+        receiver.users++;
+        return receiver;
+    }
+
+    /**
+     * Returns the <code>PooledReceiver</code> of received device if it's in use, without counting a user.
+     * @param device  a destination <code>MidiDevice</code>.
+     * @return the <code>PooledReceiver</code> of the device, or null if no one sends to it.
+     */
+    public static synchronized PooledReceiver get(MidiDevice device) {
+        return POOL.get(device);
+    }
+
+    /**
+     * Counts one user of received <code>PooledReceiver</code> less and closes it if there are no users anymore.
+     * @param receiver  a <code>PooledReceiver</code> which is not used by the caller anymore.
+     */
+    public static synchronized void release(PooledReceiver receiver) {
+        if (--receiver.users == 0) {
+            POOL.remove(receiver.getDevice());
+            receiver.close();
+        }
+    }
+
+    /**
+     * Returns the <code>PooledReceiver</code>s of all destination devices which are in use.
+     * @return a copy of the pooled receivers.
+     */
+    public static synchronized List<PooledReceiver> getAll() {
+        return new ArrayList<>(POOL.values());
+    }
+
+    /**
+     * Returns the number of destination devices which receivers are in use.
+     * @return the number of pooled receivers.
+     */
+    public static synchronized int size() {
+        return POOL.size();
+    }
+}
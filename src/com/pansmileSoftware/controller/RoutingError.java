@@ -0,0 +1,48 @@
+package com.pansmileSoftware.controller;
+
+/**
+ * This class describes one failure which happened while a <code>MidiTellMatch</code> was sending it's
+ * outgoing messages, for example an unavailable destination.
+ * @see RoutingErrors
+ */
+public final class RoutingError {
+    private final String origin;
+    private final String description;
+    private final long time;
+
+    /**
+     * Creates a new <code>RoutingError</code>.
+     * @param origin  the name of a <code>MidiTellMatch</code> or a device which has failed.
+     * @param description  a <code>String</code> describing the failure.
+     */
+    public RoutingError(String origin, String description) {
+        this.origin = origin;
+        this.description = description;
+        this.time = System.currentTimeMillis();
+    }
+
+    //Here is a bunch of getters.
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the time the failure has happened at.
+     * @return the time in milliseconds, as returned by <code>System.currentTimeMillis()</code>.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns a <code>String</code> representation of current <code>RoutingError</code>.
+     * @return the origin and the description of the failure.
+     */
+    public String toString() {
+        return origin + ": " + description;
+    }
+}
@@ -0,0 +1,61 @@
+package com.pansmileSoftware.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This static class is the channel which brings failures from the MIDI threads to the GUI. Reporting a failure
+ * never blocks: the failure is put into a bounded lock-free queue, and if the queue is full, it's only counted
+ * as dropped. The GUI drains the queue periodically and shows the failures when it has time to.
+ * @see RoutingError
+ * @see MidiTellMatch#reportFailure(String)
+ */
+public class RoutingErrors {
+    /**The maximum amount of failures waiting to be shown.*/
+    public static final int CAPACITY = 256;
+
+    private static final ConcurrentLinkedQueue<RoutingError> QUEUE = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger SIZE = new AtomicInteger();
+    private static final AtomicInteger DROPPED = new AtomicInteger();
+
+    private RoutingErrors() {
+    }
+
+    /**
+     * Puts received failure into the queue, or counts it as dropped if the queue is full.
+     * May be called from any thread.
+     * @param error  a <code>RoutingError</code> to report.
+     */
+    public static void report(RoutingError error) {
+        if (SIZE.incrementAndGet() > CAPACITY) {
+            SIZE.decrementAndGet();
+            DROPPED.incrementAndGet();
+            return;
+        }
+        QUEUE.offer(error);
+    }
+
+    /**
+     * Removes all failures from the queue and returns them in the order they were reported.
+     * @return a <code>List</code> of <code>RoutingError</code>s, which is empty if nothing has failed.
+     */
+    public static List<RoutingError> drain() {
+        List<RoutingError> errors = new ArrayList<>();
+        RoutingError error;
+        while ((error = QUEUE.poll()) != null) {
+            SIZE.decrementAndGet();
+            errors.add(error);
+        }
+        return errors;
+    }
+
+    /**
+     * Returns the number of failures which were dropped because the queue was full, and resets it.
+     * @return the number of dropped failures since the last call.
+     */
+    public static int takeDropped() {
+        return DROPPED.getAndSet(0);
+    }
+}
@@ -0,0 +1,176 @@
+package com.pansmileSoftware.controller;
+
+import java.util.*;
+
+/**
+ * This class provides matching of incoming short messages against the {@link SequenceTrigger}s of all
+ * <code>MidiTellMatch</code>es using the same source. Each step of each sequence is added to the buckets of the
+ * dispatch index it could match, so an incoming message is checked only against the steps it could advance.
+ * The state of the sequences is kept in primitive arrays: the step each sequence has reached and the time
+ * it was started, so no history of incoming messages is stored or scanned. The notes being held are kept
+ * in a 2048-bit set, one 128-bit set for each MIDI-channel.
+ * An instance of this class must be used by the source's thread only.
+ * @see SequenceTrigger
+ * @see IncomingMessageReceiver
+ */
+public class SequenceMatcher {
+    private static final int[] EMPTY = new int[0];
+
+    private final MidiTellMatch[] tellMatches;
+    private final TriggerPattern[][] steps;
+    private final long[] windows;
+    private final int[] heldNotes;
+    //The dispatch index. Each entry is a sequence index shifted by 8 bits and a step index.
+    private final int[][] index = new int[128 * 128][];
+
+    //The step each sequence waits for.
+    private final int[] reached;
+    //The time the first step of each sequence was matched at.
+    private final long[] startedAt;
+    //The number of the last message which has moved each sequence.
+    private final long[] movedBy;
+    //The notes being held, two longs for each MIDI-channel.
+    private final long[] heldNotesSet;
+    private long messageCount;
+
+    /**
+     * Compiles the sequence triggers of received <code>MidiTellMatch</code>es into a matcher.
+     * <code>MidiTellMatch</code>es without a sequence trigger are skipped.
+     * @param candidates  a <code>List</code> of <code>MidiTellMatch</code>es using the same source.
+     * @param rules  the <code>TellMatchRule</code>s of the candidates, in the same order.
+     * @param previous  the matcher which is replaced by the new one, so the held notes are kept, or null.
+     */
+    public SequenceMatcher(List<MidiTellMatch> candidates, List<TellMatchRule> rules, SequenceMatcher previous) {
+        heldNotesSet = previous != null ? previous.heldNotesSet : new long[32];
+        List<MidiTellMatch> sequences = new ArrayList<>();
+        List<SequenceTrigger> triggers = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (rules.get(i).getSequenceTrigger() != null) {
+                sequences.add(candidates.get(i));
+                triggers.add(rules.get(i).getSequenceTrigger());
+            }
+        }
+        tellMatches = sequences.toArray(new MidiTellMatch[sequences.size()]);
+        steps = new TriggerPattern[tellMatches.length][];
+        windows = new long[tellMatches.length];
+        heldNotes = new int[tellMatches.length];
+        reached = new int[tellMatches.length];
+        startedAt = new long[tellMatches.length];
+        movedBy = new long[tellMatches.length];
+        Arrays.fill(movedBy, -1);
+
+        List<List<Integer>> buckets = new ArrayList<>(Collections.nCopies(128 * 128, null));
+        for (int sequence = 0; sequence < tellMatches.length; sequence++) {
+            SequenceTrigger trigger = triggers.get(sequence);
+            steps[sequence] = trigger.getSteps();
+            windows[sequence] = trigger.getWindowNanos();
+            heldNotes[sequence] = trigger.getHeldNote();
+            //The last steps go first, so one message can't move a sequence through several steps.
+            for (int step = steps[sequence].length - 1; step >= 0; step--) {
+                TriggerPattern pattern = steps[sequence][step];
+                for (int status : pattern.getStatuses()) {
+                    for (int data1 = 0; data1 < 128; data1++) {
+                        if (pattern.matchesData1(data1)) {
+                            int key = IncomingMessageReceiver.indexOf(status, data1);
+                            if (buckets.get(key) == null) {
+                                buckets.set(key, new ArrayList<>());
+                            }
+                            buckets.get(key).add((sequence << 8) | step);
+                        }
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < index.length; i++) {
+            List<Integer> bucket = buckets.get(i);
+            if (bucket == null) {
+                index[i] = EMPTY;
+            } else {
+                index[i] = new int[bucket.size()];
+                for (int j = 0; j < bucket.size(); j++) {
+                    index[i][j] = bucket.get(j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if there are no sequences to match.
+     * @return true if no <code>MidiTellMatch</code> has a sequence trigger.
+     */
+    public boolean isEmpty() {
+        return tellMatches.length == 0;
+    }
+
+    /**
+     * Moves the sequences matched by received message to their next steps and sends the outgoing messages of
+     * the <code>MidiTellMatch</code>es which sequences are completed.
+     * @see MessageDecoder#pack(javax.sound.midi.ShortMessage)
+     * @param packed  an incoming short message packed into an <code>int</code>.
+     * @param now  the time of the incoming event, as <code>System.nanoTime()</code>.
+     */
+    public void process(int packed, long now) {
+        int status = (packed >> 16) & 0xFF;
+        trackHeldNotes(status, (packed >> 8) & 0x7F, packed & 0x7F);
+        long message = messageCount++;
+        for (int entry : index[IncomingMessageReceiver.indexOf(status, packed >> 8)]) {
+            int sequence = entry >>> 8;
+            int step = entry & 0xFF;
+            if (movedBy[sequence] == message) {
+                continue;
+            }
+            if (step > 0) {
+                if (reached[sequence] != step) {
+                    continue;
+                }
+                //A sequence which hasn't been completed in time is started over.
+                if (windows[sequence] > 0 && now - startedAt[sequence] > windows[sequence]) {
+                    reached[sequence] = 0;
+                    continue;
+                }
+            }
+            if (!steps[sequence][step].matches(packed)) {
+                continue;
+            }
+            movedBy[sequence] = message;
+            if (step == 0) {
+                startedAt[sequence] = now;
+            }
+            if (step == steps[sequence].length - 1) {
+                reached[sequence] = 0;
+                if (heldNotes[sequence] == SequenceTrigger.NO_NOTE || isHeld(status, heldNotes[sequence])) {
+                    tellMatches[sequence].sendMatched(packed, now);
+                }
+            } else {
+                reached[sequence] = step + 1;
+            }
+        }
+    }
+
+    //Sets or clears the bit of a note when a Note On or a Note Off message arrives.
+    private void trackHeldNotes(int status, int note, int velocity) {
+        int command = status & 0xF0;
+        if (command != 0x90 && command != 0x80) {
+            return;
+        }
+        int word = ((status & 0x0F) << 1) | (note >> 6);
+        if (command == 0x90 && velocity > 0) {
+            heldNotesSet[word] |= 1L << (note & 63);
+        } else {
+            heldNotesSet[word] &= ~(1L << (note & 63));
+        }
+    }
+
+    //Checks if a note is held on the channel of received status byte, or on any channel for system messages.
+    private boolean isHeld(int status, int note) {
+        if (status < 0xF0) {
+            return ((heldNotesSet[((status & 0x0F) << 1) | (note >> 6)] >>> (note & 63)) & 1) != 0;
+        }
+        for (int channel = 0; channel < 16; channel++) {
+            if (((heldNotesSet[(channel << 1) | (note >> 6)] >>> (note & 63)) & 1) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,147 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class provides a trigger which is matched by a sequence of short messages instead of a single message.
+ * A sequence is written as a list of {@link TriggerPattern}s separated by <code>-&gt;</code>, which may be followed
+ * by <code>within ms</code> to limit the time between the first and the last message of the sequence, and by
+ * <code>while held note</code> to fire only while the note is held on the MIDI-channel of the last message.
+ * For example <code>90 3c * -&gt; 90 3e * within 300</code> or <code>b0 40 &gt;3f while held 3c</code>.
+ * The time is written in decimal milliseconds, the note uses the radix of the sequence.
+ * All sequences of a source are compiled into a {@link SequenceMatcher}.
+ * @see SequenceMatcher
+ * @see MidiTellMatch
+ */
+public class SequenceTrigger {
+    /**The value of <code>heldNote</code> which means that no note must be held.*/
+    static final int NO_NOTE = -1;
+    private static final Pattern WITHIN = Pattern.compile("\\s+within\\s+(\\S+)");
+    private static final Pattern WHILE_HELD = Pattern.compile("\\s+while\\s+held\\s+(\\S+)");
+
+    private final TriggerPattern[] steps;
+    /**The maximum time between the first and the last message in nanoseconds, or 0 if it's unlimited.*/
+    private final long windowNanos;
+    private final int heldNote;
+
+    private SequenceTrigger(TriggerPattern[] steps, long windowNanos, int heldNote) {
+        this.steps = steps;
+        this.windowNanos = windowNanos;
+        this.heldNote = heldNote;
+    }
+
+    /**
+     * Compiles received <code>String</code> to a <code>SequenceTrigger</code>.
+     * @param sequence  a <code>String</code> to compile.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system used in the received sequence.
+     * @return a compiled <code>SequenceTrigger</code>.
+     * @throws InvalidMidiDataException in case if received sequence is incorrect.
+     */
+    public static SequenceTrigger compile(String sequence, byte radix) throws InvalidMidiDataException {
+        String toParse = " " + sequence.trim().toLowerCase();
+        long windowNanos = 0;
+        int heldNote = NO_NOTE;
+        try {
+            Matcher within = WITHIN.matcher(toParse);
+            if (within.find()) {
+                windowNanos = (long) (Double.parseDouble(within.group(1)) * 1000000);
+                toParse = within.replaceFirst("");
+            }
+            Matcher whileHeld = WHILE_HELD.matcher(toParse);
+            if (whileHeld.find()) {
+                heldNote = Integer.parseInt(whileHeld.group(1), radix);
+                toParse = whileHeld.replaceFirst("");
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidMidiDataException("\nInvalid Sequence: \n" + sequence);
+        }
+        if (windowNanos < 0 || heldNote > 127 || heldNote < NO_NOTE) {
+            throw new InvalidMidiDataException("\nInvalid Sequence: \n" + sequence);
+        }
+        String[] parts = toParse.trim().split("\\s*->\\s*");
+        if (parts.length > 255) {
+            throw new InvalidMidiDataException("\nInvalid Sequence: \nA sequence is too long");
+        }
+        TriggerPattern[] steps = new TriggerPattern[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            steps[i] = TriggerPattern.compile(parts[i], radix);
+        }
+        return new SequenceTrigger(steps, windowNanos, heldNote);
+    }
+
+    /**
+     * Checks if received <code>String</code> should be compiled to a <code>SequenceTrigger</code>.
+     * @param toCheck  a <code>String</code> to check.
+     * @return true if received <code>String</code> contains a sequence or a held note condition.
+     */
+    public static boolean isSequence(String toCheck) {
+        return toCheck != null && (toCheck.contains("->") || WHILE_HELD.matcher(toCheck.toLowerCase()).find());
+    }
+
+    /**
+     * Returns the steps of current <code>SequenceTrigger</code>.
+     * @return an array of <code>TriggerPattern</code>s which must be matched in order.
+     */
+    TriggerPattern[] getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the maximum time between the first and the last message of the sequence.
+     * @return the time in nanoseconds, or 0 if it's unlimited.
+     */
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * Returns the note which must be held when the last message arrives.
+     * @return the note number, or {@link #NO_NOTE} if no note must be held.
+     */
+    public int getHeldNote() {
+        return heldNote;
+    }
+
+    /**
+     * Returns the type of the last message of the sequence.
+     * @return a <code>StatusByte</code> which is the type of the last message.
+     */
+    public StatusByte getType() {
+        return steps[steps.length - 1].getType();
+    }
+
+    /**
+     * Returns the lowest MIDI-channel matched by the last step of current <code>SequenceTrigger</code>.
+     * @return a <code>byte</code> which is the MIDI-channel.
+     */
+    public byte getFirstChannel() {
+        return steps[steps.length - 1].getFirstChannel();
+    }
+
+    /**
+     * Creates a <code>String</code> representation of current <code>SequenceTrigger</code>, which can be compiled
+     * back using the same radix.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system.
+     * @return a <code>String</code> representation of current <code>SequenceTrigger</code>.
+     */
+    public String toString(byte radix) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < steps.length; i++) {
+            if (i > 0) {
+                builder.append(" -> ");
+            }
+            builder.append(steps[i].toString(radix));
+        }
+        if (windowNanos > 0) {
+            long micros = windowNanos / 1000;
+            builder.append(" within ").append(micros % 1000 == 0 ? String.valueOf(micros / 1000)
+                    : String.valueOf(micros / 1000.0));
+        }
+        if (heldNote != NO_NOTE) {
+            builder.append(" while held ").append(Integer.toString(heldNote, radix));
+        }
+        return String.valueOf(builder);
+    }
+}
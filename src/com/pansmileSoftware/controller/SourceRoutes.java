@@ -0,0 +1,74 @@
+package com.pansmileSoftware.controller;
+
+import java.util.Arrays;
+
+/**
+ * This class provides an immutable snapshot of everything the <code>IncomingMessageReceiver</code> of one source
+ * needs to route an incoming message: the dispatch index of short message triggers, the automaton of SysEx
+ * triggers, the matcher of sequence triggers, the <code>MidiTellMatch</code>es triggered by other long messages
+ * and the listening ones. It's compiled from the <code>TellMatchRule</code>s of connected
+ * <code>MidiTellMatch</code>es each time one of them is changed and is published through one volatile reference,
+ * so each incoming message is routed by one consistent snapshot.
+ * @see IncomingMessageReceiver#reindex()
+ * @see TellMatchRule
+ */
+final class SourceRoutes {
+    /**An empty bucket of the dispatch index.*/
+    static final MidiTellMatch[] NONE = new MidiTellMatch[0];
+    /**The routes of a source which no <code>MidiTellMatch</code> uses yet.*/
+    static final SourceRoutes EMPTY;
+    static {
+        MidiTellMatch[][] emptyIndex = new MidiTellMatch[128 * 128][];
+        Arrays.fill(emptyIndex, NONE);
+        EMPTY = new SourceRoutes(emptyIndex, null, null, NONE, NONE);
+    }
+
+    private final MidiTellMatch[][] shortIndex;
+    private final SysexAutomaton sysexAutomaton;
+    private final SequenceMatcher sequenceMatcher;
+    private final MidiTellMatch[] longTriggers;
+    private final MidiTellMatch[] listeners;
+
+    /**
+     * Creates new <code>SourceRoutes</code>. Received arrays must not be changed after that.
+     * @param shortIndex  the dispatch index, addressed by the status byte and the first data byte.
+     * @param sysexAutomaton  the automaton of SysEx triggers, or null if there are none.
+     * @param sequenceMatcher  the matcher of sequence triggers, or null if there are none.
+     * @param longTriggers  <code>MidiTellMatch</code>es which are triggered by other long messages.
+     * @param listeners  <code>MidiTellMatch</code>es which are listening for a new trigger message.
+     */
+    SourceRoutes(MidiTellMatch[][] shortIndex, SysexAutomaton sysexAutomaton, SequenceMatcher sequenceMatcher,
+                 MidiTellMatch[] longTriggers, MidiTellMatch[] listeners) {
+        this.shortIndex = shortIndex;
+        this.sysexAutomaton = sysexAutomaton;
+        this.sequenceMatcher = sequenceMatcher;
+        this.longTriggers = longTriggers;
+        this.listeners = listeners;
+    }
+
+    /**
+     * Returns the bucket of the dispatch index for received short message.
+     * @param packed  a short message packed into an <code>int</code>.
+     * @return an array of <code>MidiTellMatch</code>es which triggers could match the message.
+     */
+    MidiTellMatch[] getCandidates(int packed) {
+        return shortIndex[IncomingMessageReceiver.indexOf(packed >> 16, packed >> 8)];
+    }
+
+    //Here is a bunch of getters.
+    SysexAutomaton getSysexAutomaton() {
+        return sysexAutomaton;
+    }
+
+    SequenceMatcher getSequenceMatcher() {
+        return sequenceMatcher;
+    }
+
+    MidiTellMatch[] getLongTriggers() {
+        return longTriggers;
+    }
+
+    MidiTellMatch[] getListeners() {
+        return listeners;
+    }
+}
@@ -14,12 +14,9 @@ import javax.sound.midi.*;
  * @see com.pansmileSoftware.view.MonitorView
  */
 public class SpyReceiver implements Receiver {
-    private byte radix = 16;
     private MidiDevice sourceOrDest;
     private String deviceAlignment;
     private MonitorTableModel model;
-    private boolean showMessageData;
-    private boolean showMessageInfo;
     private boolean isDestReceiver;
 
     /**
@@ -64,9 +61,6 @@ public class SpyReceiver implements Receiver {
         } else {
             deviceAlignment = String.valueOf(nameBuilder);
         }
-        //Show message data and message detailed description in messageInfo.
-        showMessageData = true;
-        showMessageInfo = true;
     }
     /**
      * Constructs new {@link MessageInfo} using received message and additional known parameters from current instance
@@ -77,7 +71,7 @@ public class SpyReceiver implements Receiver {
      */
     @Override
     public void send(MidiMessage message, long latencyStamp) {
-        MessageInfo info = new MessageInfo(message, deviceAlignment, radix, showMessageData, showMessageInfo);
+        MessageInfo info = new MessageInfo(message, deviceAlignment);
         if (!isDestReceiver) {
             model.add(info);
         } else if (latencyStamp<= 0) {
@@ -90,31 +84,6 @@ public class SpyReceiver implements Receiver {
     @Override
     public void close() {}
 
-    /**
-     * Sets the radix of numeric system that will be used while constructing MessageInfo instances in send() method.
-     * @param radix  a radix to set
-     */
-    public void setRadix(byte radix) {
-        this.radix = radix;
-    }
-
-    /**
-     * Defines if the data of incoming messages will be used while constructing MessageInfo in send() method
-     * @param showMessageData  true if we need to use message's data.
-     */
-    public void setShowMessageData(boolean showMessageData) {
-        this.showMessageData = showMessageData;
-    }
-
-    /**
-     * Defines if the detailed description of incoming messages will be used while constructing
-     * MessageInfo in send() method.
-     * @param showMessageInfo  true if we need to use detailed descriptions.
-     */
-    public void setShowMessageInfo(boolean showMessageInfo) {
-        this.showMessageInfo = showMessageInfo;
-    }
-
     /**
      * Returns the sourceOrDest of current SpyReceiver
      * @return a device which is connected current SpyReceiver.
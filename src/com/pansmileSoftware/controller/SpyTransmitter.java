@@ -3,6 +3,7 @@ package com.pansmileSoftware.controller;
 
 import javax.sound.midi.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -10,20 +11,37 @@ import java.util.stream.Collectors;
  * This class provides us a transmitter that can be connected to the SpyReceiver
  * to spy on destinations of <code>MidiTellMatch</code>es. This gets the possibility to catch any <code>MidiMessage</code> sent
  * by <code>MidiTellMatch</code> to any of it's destinations.
+ * The destinations and the receivers are changed by the GUI while messages are sent by the source's thread,
+ * so the destinations' pooled receivers are kept as an array which is replaced as a whole, and the spy receivers
+ * are kept in a copy-on-write set.
+ * @see ReceiverPool
  * @see MidiTellMatch
  * @see SpyReceiver
  * @see MidiMonitor
  */
 public class SpyTransmitter implements Transmitter {
-    Set<SpyReceiver> receivers = new HashSet<>();
-    List<MidiDevice> destinations;
+    Set<SpyReceiver> receivers = new CopyOnWriteArraySet<>();
+    private volatile PooledReceiver[] outputs = new PooledReceiver[0];
+    //The delays of a single message, which is sent as a batch.
+    private static final long[] NO_DELAYS = {0};
+    private MidiTellMatch owner;
 
     /**
-     * The constructor gives a link to the list of Midi-devices, used in current <code>MidiTellMatch</code>.
+     * The constructor copies the list of Midi-devices, used in current <code>MidiTellMatch</code>.
      * @param destinations  a list of MIDI-devices, used in parent <code>MidiTellMatch</code> as destinations.
      * */
     public SpyTransmitter(List<MidiDevice> destinations) {
-        this.destinations = destinations;
+        setDestinations(destinations);
+    }
+
+    /**
+     * Creates a <code>SpyTransmitter</code> which reports failed destinations to received <code>MidiTellMatch</code>.
+     * @param destinations  a list of MIDI-devices, used in parent <code>MidiTellMatch</code> as destinations.
+     * @param owner  a <code>MidiTellMatch</code> which failures are counted.
+     * */
+    public SpyTransmitter(List<MidiDevice> destinations, MidiTellMatch owner) {
+        this(destinations);
+        this.owner = owner;
     }
 
     /**
@@ -70,55 +88,146 @@ public class SpyTransmitter implements Transmitter {
     }
 
     /**
-     * Sends received <code>MidiMessage</code> to destinations after waiting for an amount of time.
+     * Sends received <code>MidiMessage</code> to destinations after waiting for an amount of time, which is counted
+     * from the time of the incoming event. Each destination waits for it's own latency compensation in addition.
+     * Destinations with timestamped output get the message at once with it's deadline, the others get it from
+     * the <code>DelayScheduler</code> at the deadline.
      * Also sends received message to connected <code>SpyReceiver</code>s immediately.
      * @param message  a <code>MidiMessage</code> to send.
      * @param latencyStamp  an amount of time in microseconds to wait for before sending the message to destinations.
+     * @param eventTime  the <code>System.nanoTime()</code> when the incoming event happened.
+     * @param tempo  the <code>TempoTracker</code> which the delay follows, or null if it's a fixed time.
+     * @param quarterNanos  the length of a quarter note the delay was counted with.
      */
-    public void send(MidiMessage message, long latencyStamp) {
-        if (latencyStamp > 0) {
-            //In case if the latencyStamp > 0 , creating new thread that will sleep for an amount of time in
-            // microseconds (latencyStamp) before sending the message to destinations.
-            Thread thread = new Thread() {
-                public synchronized void run() {
-                    try {
-                        //Sleeping.
-                        TimeUnit.MICROSECONDS.sleep(latencyStamp);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    //Sending the message to destinations.
-                    sendToDestinations(message);
-                }
-            };
-            //Starting the thread.
-            thread.start();
-        } else {
-            //Sending the message to destinations if latencyStamp <= 0.
-            sendToDestinations(message);
+    public void send(MidiMessage message, long latencyStamp, long eventTime, TempoTracker tempo, long quarterNanos) {
+        send(new MidiMessage[]{message}, NO_DELAYS, latencyStamp, eventTime, tempo, quarterNanos);
+    }
+
+    /**
+     * Sends received batch of <code>MidiMessage</code>s to destinations after waiting for an amount of time,
+     * which is counted from the time of the incoming event. Messages are sent in order, each part of the batch
+     * which is not separated by a delay is sent at once. Also sends received messages to connected
+     * <code>SpyReceiver</code>s immediately.
+     * @see OutgoingMacro
+     * @param messages  an array of <code>MidiMessage</code>s to send.
+     * @param delays  an array of delays in microseconds. Each delay is counted from the previous message.
+     * @param latencyStamp  an amount of time in microseconds to wait for before sending the messages to destinations.
+     * @param eventTime  the <code>System.nanoTime()</code> when the incoming event happened.
+     * @param tempo  the <code>TempoTracker</code> which the delay follows, or null if it's a fixed time.
+     * @param quarterNanos  the length of a quarter note the delay was counted with.
+     */
+    public void send(MidiMessage[] messages, long[] delays, long latencyStamp, long eventTime,
+                     TempoTracker tempo, long quarterNanos) {
+        //The destinations are read once, so every part of the batch goes to the same destinations.
+        PooledReceiver[] current = outputs;
+        //Finding the messages which could be sent right now.
+        int immediate = 0;
+        if (latencyStamp <= 0) {
+            while (immediate < messages.length && delays[immediate] <= 0) {
+                immediate++;
+            }
+            if (immediate > 0) {
+                sendAt(current, messages, 0, immediate, eventTime, 0, true, null, 0);
+            }
         }
-        //If there are SpyReceivers connected, sending the message to them.
+        //Each delayed part of the batch is sent at it's own deadline, counted from the event. The macro delays
+        //are kept apart from the delay of the MidiTellMatch, so only the latter follows the tempo.
+        long base = eventTime + TimeUnit.MICROSECONDS.toNanos(Math.max(0, latencyStamp));
+        long fixedNanos = 0;
+        int start = immediate;
+        while (start < messages.length) {
+            fixedNanos += TimeUnit.MICROSECONDS.toNanos(delays[start]);
+            int end = start + 1;
+            while (end < messages.length && delays[end] <= 0) {
+                end++;
+            }
+            sendAt(current, messages, start, end, base, fixedNanos, false, tempo, quarterNanos);
+            start = end;
+        }
+        //If there are SpyReceivers connected, sending the messages to them.
         if (receivers.size() > 0) {
-            spy(message, latencyStamp);
+            long delay = latencyStamp > 0 ? latencyStamp : 0;
+            for (int i = 0; i < messages.length; i++) {
+                delay += delays[i];
+                spy(messages[i], delay);
+            }
         }
     }
 
     /**
-     * Sends received <code>MidiMessage</code> to destinations.
-     * @param message  a <code>MidiMessage</code> to send.
+     * Sends a part of received batch to received destinations at a deadline, which is received base time
+     * followed by a fixed time and each destination's latency compensation. The compensation of each destination
+     * is read once, and the way the destination gets the messages is chosen by it: an immediate part goes
+     * straight into the output queue of a destination without compensation. Destinations which send timestamped
+     * messages themselves get the messages at once with their deadline, the rest are sent by
+     * the <code>DelayScheduler</code>, one task for all destinations with the same deadline. A deadline which
+     * follows the tempo is always waited for by the scheduler, so the part of it till the base time could be
+     * rescaled.
+     * @param current  the destinations' <code>PooledReceiver</code>s to send to.
+     * @param messages  an array of <code>MidiMessage</code>s to send.
+     * @param from  the index of the first message to send.
+     * @param to  the index after the last message to send.
+     * @param base  the <code>System.nanoTime()</code> when the delay following the tempo ends.
+     * @param fixedNanos  the time in nanoseconds after the base time, which doesn't follow the tempo.
+     * @param isImmediate  true if the messages are not delayed by anything except the latency compensation.
+     * @param tempo  the <code>TempoTracker</code> which the deadline follows, or null.
+     * @param quarterNanos  the length of a quarter note the deadline was counted with.
      */
-    private void sendToDestinations(MidiMessage message) {
-        //For each destination of destinations.
-        for (MidiDevice destination : destinations) {
-            try {
-                //Trying to open a destination.
-                if (!destination.isOpen()) {
-                    destination.open();
+    private void sendAt(PooledReceiver[] current, MidiMessage[] messages, int from, int to, long base,
+                        long fixedNanos, boolean isImmediate, TempoTracker tempo, long quarterNanos) {
+        //Keeping the destinations which are waited for by the scheduler, and their deadlines.
+        //The arrays are only created if there are such destinations.
+        PooledReceiver[] untimed = null;
+        long[] deadlines = null;
+        int untimedCount = 0;
+        for (PooledReceiver output : current) {
+            long compensation = output.getCompensation();
+            if (isImmediate && compensation <= 0) {
+                //Each destination is written by it's own thread, so a slow destination doesn't delay the others.
+                for (int i = from; i < to; i++) {
+                    output.enqueue(messages[i], owner, -1);
                 }
-                //Getting the destination's receiver and sending the message to it.
-                destination.getReceiver().send(message, -1);
-            } catch (MidiUnavailableException e) {
-                e.printStackTrace();
+                continue;
+            }
+            long outputDeadline = base + fixedNanos + TimeUnit.MICROSECONDS.toNanos(compensation);
+            if (tempo == null && output.isTimestamped()) {
+                for (int i = from; i < to; i++) {
+                    output.enqueue(messages[i], owner, outputDeadline);
+                }
+            } else {
+                if (untimed == null) {
+                    untimed = new PooledReceiver[current.length];
+                    deadlines = new long[current.length];
+                }
+                untimed[untimedCount] = output;
+                deadlines[untimedCount++] = outputDeadline;
+            }
+        }
+        //Scheduling one task for each distinct deadline.
+        for (int first = 0; first < untimedCount; first++) {
+            if (untimed[first] == null) {
+                continue;
+            }
+            PooledReceiver[] group = new PooledReceiver[untimedCount - first];
+            int count = 0;
+            for (int j = first; j < untimedCount; j++) {
+                if (untimed[j] != null && deadlines[j] == deadlines[first]) {
+                    group[count++] = untimed[j];
+                    untimed[j] = null;
+                }
+            }
+            int groupCount = count;
+            Runnable task = () -> {
+                for (int j = 0; j < groupCount; j++) {
+                    for (int i = from; i < to; i++) {
+                        group[j].enqueue(messages[i], owner, -1);
+                    }
+                }
+            };
+            if (tempo != null) {
+                DelayScheduler.scheduleAt(task, base, deadlines[first] - base, tempo, quarterNanos);
+            } else {
+                DelayScheduler.scheduleAt(task, deadlines[first]);
             }
         }
     }
@@ -136,12 +245,29 @@ public class SpyTransmitter implements Transmitter {
     }
 
     /**
-     * Changes the destinations of current <code>SpyTransmitter</code>.
+     * Changes the destinations of current <code>SpyTransmitter</code>. Received <code>List</code> is copied,
+     * so it may be changed later without affecting messages which are being sent.
      * @param newDestinations  a <code>List</code> of <code>MidiDevice</code>s to set as
      * destinations instead of old ones.
      */
-    public void setDestinations(List<MidiDevice> newDestinations) {
-        destinations = newDestinations;
+    public synchronized void setDestinations(List<MidiDevice> newDestinations) {
+        PooledReceiver[] oldOutputs = outputs;
+        PooledReceiver[] newOutputs = new PooledReceiver[newDestinations.size()];
+        for (int i = 0; i < newOutputs.length; i++) {
+            newOutputs[i] = ReceiverPool.acquire(newDestinations.get(i));
+        }
+        outputs = newOutputs;
+        for (PooledReceiver oldOutput : oldOutputs) {
+            ReceiverPool.release(oldOutput);
+        }
+    }
+
+    /**
+     * Releases the pooled receivers of current <code>SpyTransmitter</code>'s destinations. Called when the
+     * <code>MidiTellMatch</code> is not used anymore.
+     */
+    public void releaseDestinations() {
+        setDestinations(Collections.<MidiDevice>emptyList());
     }
 
     /**
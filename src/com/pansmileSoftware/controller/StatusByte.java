@@ -65,6 +65,22 @@ public enum StatusByte {
         return statusByte;
     }
 
+    /**Returns true if a <code>StatusByte</code> is a System Real-Time message: Timing Clock, Start, Continue,
+     * Stop, Active Sensing or System Reset. These messages have no data and may be sent at any time.
+     * @return true for System Real-Time messages.
+     */
+    public boolean isRealTime() {
+        return isRealTime(statusByte);
+    }
+
+    /**Returns true if received status byte belongs to a System Real-Time message.
+     * @param status  a status byte from 0x80 to 0xFF.
+     * @return true for System Real-Time messages.
+     */
+    public static boolean isRealTime(int status) {
+        return (status & 0xFF) >= ShortMessage.TIMING_CLOCK;
+    }
+
     /**Returns the <code>int</code> representation of a <code>StatusByte</code> according to MIDI-channel.
      * @param midiChannel  the MIDI-channel.
      * @return an int representation of <code>StatusByte</code>
@@ -0,0 +1,165 @@
+package com.pansmileSoftware.controller;
+
+import java.util.*;
+
+/**
+ * This class provides matching of incoming SysEx messages against the SysEx triggers of all
+ * <code>MidiTellMatch</code>es using the same source at once. The {@link SysexPattern}s are put into a trie,
+ * where a wildcard byte is a separate edge, and the trie is turned into a deterministic automaton with a
+ * 256-entry transition row for each state. As soon as SysEx triggers always start at the first byte of a message,
+ * the automaton needs no failure links: each byte of an incoming message is examined once, and the walk stops
+ * at the first byte no pattern could continue with, no matter how many SysEx triggers exist.
+ * @see SysexPattern
+ * @see IncomingMessageReceiver
+ */
+public class SysexAutomaton {
+    /**The transition to this state means that no pattern could be matched anymore.*/
+    private static final int DEAD = -1;
+    private static final MidiTellMatch[] NONE = new MidiTellMatch[0];
+
+    /**The transition table. The next state for state <code>s</code> and byte <code>b</code> is at
+     * <code>s * 256 + b</code>.*/
+    private final int[] transitions;
+    /**The <code>MidiTellMatch</code>es triggered as soon as the state is reached.*/
+    private final MidiTellMatch[][] prefixAccepts;
+    /**The <code>MidiTellMatch</code>es triggered if the message ends in the state.*/
+    private final MidiTellMatch[][] fullAccepts;
+
+    /**
+     * Compiles the SysEx triggers of received <code>MidiTellMatch</code>es into an automaton.
+     * <code>MidiTellMatch</code>es without a SysEx trigger are skipped.
+     * @param tellMatches  a <code>List</code> of <code>MidiTellMatch</code>es using the same source.
+     * @param rules  the <code>TellMatchRule</code>s of the <code>MidiTellMatch</code>es, in the same order.
+     */
+    public SysexAutomaton(List<MidiTellMatch> tellMatches, List<TellMatchRule> rules) {
+        //Building the trie. Each node has 256 byte edges and a wildcard edge.
+        List<int[]> children = new ArrayList<>();
+        List<Integer> wildcards = new ArrayList<>();
+        List<List<MidiTellMatch>> prefixEnds = new ArrayList<>();
+        List<List<MidiTellMatch>> fullEnds = new ArrayList<>();
+        addNode(children, wildcards, prefixEnds, fullEnds);
+        for (int i = 0; i < tellMatches.size(); i++) {
+            MidiTellMatch tellMatch = tellMatches.get(i);
+            SysexPattern pattern = rules.get(i).getSysexPattern();
+            if (pattern == null) {
+                continue;
+            }
+            int node = 0;
+            for (int aByte : pattern.getBytes()) {
+                int next = aByte == SysexPattern.ANY ? wildcards.get(node) : children.get(node)[aByte];
+                if (next == DEAD) {
+                    next = addNode(children, wildcards, prefixEnds, fullEnds);
+                    if (aByte == SysexPattern.ANY) {
+                        wildcards.set(node, next);
+                    } else {
+                        children.get(node)[aByte] = next;
+                    }
+                }
+                node = next;
+            }
+            (pattern.isPrefix() ? prefixEnds : fullEnds).get(node).add(tellMatch);
+        }
+
+        //Turning the trie into a deterministic automaton. Each state is a set of trie nodes.
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> stateIndices = new HashMap<>();
+        BitSet start = new BitSet();
+        start.set(0);
+        states.add(start);
+        stateIndices.put(start, 0);
+        List<int[]> rows = new ArrayList<>();
+        for (int state = 0; state < states.size(); state++) {
+            int[] row = new int[256];
+            for (int aByte = 0; aByte < 256; aByte++) {
+                BitSet next = new BitSet();
+                BitSet current = states.get(state);
+                for (int node = current.nextSetBit(0); node >= 0; node = current.nextSetBit(node + 1)) {
+                    if (children.get(node)[aByte] != DEAD) {
+                        next.set(children.get(node)[aByte]);
+                    }
+                    if (wildcards.get(node) != DEAD) {
+                        next.set(wildcards.get(node));
+                    }
+                }
+                if (next.isEmpty()) {
+                    row[aByte] = DEAD;
+                } else {
+                    Integer index = stateIndices.get(next);
+                    if (index == null) {
+                        index = states.size();
+                        states.add(next);
+                        stateIndices.put(next, index);
+                    }
+                    row[aByte] = index;
+                }
+            }
+            rows.add(row);
+        }
+
+        transitions = new int[rows.size() * 256];
+        prefixAccepts = new MidiTellMatch[states.size()][];
+        fullAccepts = new MidiTellMatch[states.size()][];
+        for (int state = 0; state < states.size(); state++) {
+            System.arraycopy(rows.get(state), 0, transitions, state * 256, 256);
+            prefixAccepts[state] = collect(states.get(state), prefixEnds);
+            fullAccepts[state] = collect(states.get(state), fullEnds);
+        }
+    }
+
+    /**
+     * Walks received SysEx message through the automaton and sends the outgoing messages of each
+     * <code>MidiTellMatch</code> which trigger is matched.
+     * @param data  the bytes of an incoming message, starting with the SysEx byte.
+     * @param length  the number of bytes to examine.
+     * @param eventTime  the time of the incoming event, as <code>System.nanoTime()</code>.
+     */
+    public void match(byte[] data, int length, long eventTime) {
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            state = transitions[(state << 8) | (data[i] & 0xFF)];
+            if (state == DEAD) {
+                return;
+            }
+            for (MidiTellMatch tellMatch : prefixAccepts[state]) {
+                tellMatch.sendMatched(eventTime);
+            }
+        }
+        for (MidiTellMatch tellMatch : fullAccepts[state]) {
+            tellMatch.sendMatched(eventTime);
+        }
+    }
+
+    /**
+     * Returns true if current <code>SysexAutomaton</code> contains no patterns.
+     * @return true if no message could be matched.
+     */
+    public boolean isEmpty() {
+        for (int next : Arrays.copyOf(transitions, 256)) {
+            if (next != DEAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Adds a trie node without edges and returns it's index.
+    private static int addNode(List<int[]> children, List<Integer> wildcards,
+                               List<List<MidiTellMatch>> prefixEnds, List<List<MidiTellMatch>> fullEnds) {
+        int[] edges = new int[256];
+        Arrays.fill(edges, DEAD);
+        children.add(edges);
+        wildcards.add(DEAD);
+        prefixEnds.add(new ArrayList<>());
+        fullEnds.add(new ArrayList<>());
+        return children.size() - 1;
+    }
+
+    //Collects the MidiTellMatches which patterns end in any of received trie nodes.
+    private static MidiTellMatch[] collect(BitSet nodes, List<List<MidiTellMatch>> ends) {
+        List<MidiTellMatch> result = new ArrayList<>();
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            result.addAll(ends.get(node));
+        }
+        return result.isEmpty() ? NONE : result.toArray(NONE);
+    }
+}
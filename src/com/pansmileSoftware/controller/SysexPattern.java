@@ -0,0 +1,112 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+
+/**
+ * This class provides a SysEx trigger which may contain wildcard bytes and may match only the beginning
+ * of a message. A pattern is written like a usual SysEx message, but any byte may be replaced with <code>*</code>,
+ * and the pattern may end with <code>...</code> instead of the End of Exclusive byte to match any message
+ * starting with the same bytes. For example <code>f0 43 * 4c ...</code>.
+ * The patterns of all <code>MidiTellMatch</code>es using the same source are compiled together into
+ * a {@link SysexAutomaton}.
+ * @see SysexAutomaton
+ * @see MidiTellMatch
+ */
+public class SysexPattern {
+    /**The value which stands for a wildcard byte.*/
+    static final int ANY = -1;
+
+    private final int[] bytes;
+    private final boolean isPrefix;
+
+    private SysexPattern(int[] bytes, boolean isPrefix) {
+        this.bytes = bytes;
+        this.isPrefix = isPrefix;
+    }
+
+    /**
+     * Creates a pattern which matches only received message.
+     * @param message  a <code>MidiMessage</code> to match.
+     * @return a <code>SysexPattern</code> which matches received message.
+     */
+    public static SysexPattern of(MidiMessage message) {
+        byte[] data = message.getMessage();
+        int[] bytes = new int[message.getLength()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data[i] & 0xFF;
+        }
+        return new SysexPattern(bytes, false);
+    }
+
+    /**
+     * Compiles received <code>String</code> to a <code>SysexPattern</code>.
+     * @param pattern  a <code>String</code> to compile.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system used in the received pattern.
+     * @return a compiled <code>SysexPattern</code>.
+     * @throws InvalidMidiDataException in case if received pattern is incorrect.
+     */
+    public static SysexPattern compile(String pattern, byte radix) throws InvalidMidiDataException {
+        String[] tokens = pattern.trim().split("\\s+");
+        boolean isPrefix = tokens[tokens.length - 1].equals("...");
+        int[] bytes = new int[isPrefix ? tokens.length - 1 : tokens.length];
+        try {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = tokens[i].equals("*") ? ANY : Integer.parseInt(tokens[i], radix);
+                if (bytes[i] > 0xFF || bytes[i] < ANY) {
+                    throw new InvalidMidiDataException("\nInvalid Pattern: \n" + tokens[i] + " is out of range");
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidMidiDataException("\nInvalid Pattern: \n" + pattern);
+        }
+        if (bytes.length == 0 || bytes[0] != StatusByte.SYSTEM_EXCLUSIVE.getStatusByte()) {
+            throw new InvalidMidiDataException("\nInvalid Pattern: \nA SysEx pattern must start with the SysEx byte");
+        }
+        return new SysexPattern(bytes, isPrefix);
+    }
+
+    /**
+     * Checks if received <code>String</code> should be compiled to a <code>SysexPattern</code>
+     * instead of being encoded to a <code>SysexMessage</code>.
+     * @param toCheck  a <code>String</code> to check.
+     * @return true if received <code>String</code> is a SysEx message containing any of pattern symbols.
+     */
+    public static boolean isPattern(String toCheck) {
+        return toCheck != null && toCheck.trim().toLowerCase().matches("(f0|240)\\s.*")
+                && (toCheck.contains("*") || toCheck.contains("..."));
+    }
+
+    /**
+     * Returns the bytes of current <code>SysexPattern</code>.
+     * @return an array of bytes, where {@link #ANY} stands for a wildcard.
+     */
+    int[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns true if current <code>SysexPattern</code> matches any message starting with it's bytes.
+     * @return true if current <code>SysexPattern</code> matches the beginning of messages.
+     */
+    public boolean isPrefix() {
+        return isPrefix;
+    }
+
+    /**
+     * Creates a <code>String</code> representation of current <code>SysexPattern</code>, which can be compiled
+     * back using the same radix.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system.
+     * @return a <code>String</code> representation of current <code>SysexPattern</code>.
+     */
+    public String toString(byte radix) {
+        StringBuilder builder = new StringBuilder();
+        for (int aByte : bytes) {
+            builder.append(aByte == ANY ? "*" : Integer.toString(aByte, radix)).append(" ");
+        }
+        if (isPrefix) {
+            builder.append("...");
+        }
+        return String.valueOf(builder).trim();
+    }
+}
@@ -0,0 +1,48 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiDevice;
+import java.util.ArrayList;
+
+/**
+ * This interface is implemented by the owner of <code>MidiTellMatch</code>es. It gives them the devices available
+ * in the system and is told about the events which the owner may want to show, so the routing doesn't depend
+ * on any GUI. It's implemented by the main window and by the headless launcher.
+ * @see MidiTellMatch
+ * @see GlobalPresetManager
+ * @see com.pansmileSoftware.view.MainView
+ * @see HeadlessRouter
+ */
+public interface TellMatchListener {
+    /**
+     * Returns the sources which are available in the system.
+     * @return an <code>ArrayList</code> of sources.
+     */
+    ArrayList<MidiDevice> getSources();
+
+    /**
+     * Returns the destinations which are available in the system.
+     * @return an <code>ArrayList</code> of destinations.
+     */
+    ArrayList<MidiDevice> getDestinations();
+
+    /**
+     * Called when a listening <code>MidiTellMatch</code> has got a new trigger message.
+     * @param tellMatch  the <code>MidiTellMatch</code> which trigger is changed.
+     */
+    void triggerListened(MidiTellMatch tellMatch);
+
+    /**
+     * Called when listening for a trigger message was failed because of wrong MIDI-channel in incoming message.
+     * @param tellMatch  the listening <code>MidiTellMatch</code>.
+     * @param requiredChannel  a <code>byte</code> which is the number of expected channel.
+     * @param detectedChannel  a <code>byte</code> which is the actual detected channel.
+     */
+    void listeningFailed(MidiTellMatch tellMatch, byte requiredChannel, byte detectedChannel);
+
+    /**
+     * Runs received task on the thread which makes all changes of <code>MidiTellMatch</code>es.
+     * Used by the source's thread to hand over the changes caused by incoming messages.
+     * @param task  a <code>Runnable</code> to run.
+     */
+    void runLater(Runnable task);
+}
@@ -0,0 +1,146 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiMessage;
+import java.util.Arrays;
+
+/**
+ * This class provides an immutable snapshot of everything a <code>MidiTellMatch</code> needs to answer
+ * an incoming message: the compiled triggers, the prepared outgoing batches, the latency compensation or
+ * the tempo-synced delay, the trigger limits and the listening state. The fields of a <code>MidiTellMatch</code>
+ * are changed by the GUI, while incoming messages are handled by the source's thread, so each change compiles
+ * a new <code>TellMatchRule</code> which is published through one volatile reference. The source's thread reads
+ * this reference once per message and always sees a consistent rule without any locking.
+ * None of the arrays held by a <code>TellMatchRule</code> is changed after it's created.
+ * @see MidiTellMatch
+ * @see IncomingMessageReceiver
+ */
+public final class TellMatchRule {
+    /**The rule of a <code>MidiTellMatch</code> which is not compiled yet. It matches nothing.*/
+    static final TellMatchRule EMPTY;
+    static {
+        MidiMessage[][] noBatches = new MidiMessage[128][];
+        Arrays.fill(noBatches, new MidiMessage[0]);
+        EMPTY = new TellMatchRule(null, null, null, null, noBatches, new MidiMessage[0], new long[0], -1,
+                null, null, null, false);
+    }
+
+    private final TriggerPattern triggerPattern;
+    private final byte[] triggerBytes;
+    private final SysexPattern sysexPattern;
+    private final SequenceTrigger sequenceTrigger;
+    private final MidiMessage[][] outgoingBatches;
+    private final MidiMessage[] plainBatch;
+    private final long[] batchDelays;
+    private final long latencyComp;
+    private final NoteValue noteDelay;
+    private final TempoTracker tempo;
+    private final TriggerLimiter limiter;
+    private final boolean isListening;
+
+    /**
+     * Creates a new <code>TellMatchRule</code>. Received arrays must not be changed after that.
+     * @param triggerPattern  the compiled short message trigger, or null.
+     * @param triggerBytes  the bytes of a long trigger message which is compared as is, or null.
+     * @param sysexPattern  the compiled SysEx trigger, or null.
+     * @param sequenceTrigger  the compiled sequence trigger, or null.
+     * @param outgoingBatches  128 batches of outgoing messages, indexed by the value of incoming message.
+     * @param plainBatch  the batch of outgoing messages without value transform.
+     * @param batchDelays  the delays of the batch messages in microseconds.
+     * @param latencyComp  the delay before sending the batch in microseconds, or -1.
+     * @param noteDelay  the delay before sending the batch in musical units, or null.
+     * @param tempo  the tempo of the source which the note delay follows, or null.
+     * @param limiter  the limits of sending, or null.
+     * @param isListening  true if the <code>MidiTellMatch</code> is listening for a new trigger.
+     */
+    TellMatchRule(TriggerPattern triggerPattern, byte[] triggerBytes, SysexPattern sysexPattern,
+                  SequenceTrigger sequenceTrigger, MidiMessage[][] outgoingBatches,
+                  MidiMessage[] plainBatch, long[] batchDelays, long latencyComp, NoteValue noteDelay,
+                  TempoTracker tempo, TriggerLimiter limiter, boolean isListening) {
+        this.triggerPattern = triggerPattern;
+        this.triggerBytes = triggerBytes;
+        this.sysexPattern = sysexPattern;
+        this.sequenceTrigger = sequenceTrigger;
+        this.outgoingBatches = outgoingBatches;
+        this.plainBatch = plainBatch;
+        this.batchDelays = batchDelays;
+        this.latencyComp = latencyComp;
+        this.noteDelay = noteDelay;
+        this.tempo = tempo;
+        this.limiter = limiter;
+        this.isListening = isListening;
+    }
+
+    //Here is a bunch of getters.
+    public TriggerPattern getTriggerPattern() {
+        return triggerPattern;
+    }
+
+    byte[] getTriggerBytes() {
+        return triggerBytes;
+    }
+
+    SysexPattern getSysexPattern() {
+        return sysexPattern;
+    }
+
+    SequenceTrigger getSequenceTrigger() {
+        return sequenceTrigger;
+    }
+
+    /**
+     * Returns the batch of outgoing messages carrying received value.
+     * @param value  the value of incoming message.
+     * @return an array of <code>MidiMessage</code>s to send.
+     */
+    MidiMessage[] getBatch(int value) {
+        return outgoingBatches[value];
+    }
+
+    MidiMessage[] getPlainBatch() {
+        return plainBatch;
+    }
+
+    long[] getBatchDelays() {
+        return batchDelays;
+    }
+
+    public long getLatencyComp() {
+        return latencyComp;
+    }
+
+    /**
+     * Returns the length of a quarter note which the delay of the batch follows. In case if there is no note delay
+     * or the tempo of the source is unknown, the fixed latency compensation is used instead.
+     * @return the length in nanoseconds, or 0 if the delay doesn't follow the tempo.
+     */
+    long getQuarterNanos() {
+        return noteDelay != null && tempo != null ? tempo.getQuarterNanos() : 0;
+    }
+
+    /**
+     * Returns the delay before sending the batch.
+     * @param quarterNanos  the length of a quarter note returned by {@link #getQuarterNanos()}.
+     * @return the delay in microseconds, or -1 if there is no delay.
+     */
+    long getDelay(long quarterNanos) {
+        return quarterNanos > 0 ? noteDelay.toMicros(quarterNanos) : latencyComp;
+    }
+
+    TempoTracker getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Checks the limits of sending, if there are any. The <code>TriggerLimiter</code> is kept by the rule,
+     * so it's state is shared by all the rules published until the limits are changed.
+     * @param now  the time of the trigger, as <code>System.nanoTime()</code>.
+     * @return true if the outgoing messages may be sent.
+     */
+    boolean isAllowed(long now) {
+        return limiter == null || limiter.tryAcquire(now);
+    }
+
+    public boolean isListening() {
+        return isListening;
+    }
+}
@@ -0,0 +1,173 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiDevice;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the tempo of one source from it's incoming Timing Clock messages, which come 24 times
+ * per quarter note. The interval between clocks is smoothed by an exponentially weighted moving average,
+ * so one late clock doesn't move the tempo, while a real change of tempo is followed in a few clocks.
+ * Each clock costs a few arithmetic operations on the source's thread. When the tempo changes noticeably,
+ * the <code>DelayScheduler</code> is told to rescale the tasks which are waiting for a note value.
+ * A tracker is kept for each source by it's name, so it's kept while the MIDI-system is rescanned.
+ * @see NoteValue
+ * @see DelayScheduler#rescale(TempoTracker)
+ * @see IncomingMessageReceiver
+ */
+public class TempoTracker {
+    /**The number of Timing Clock messages per quarter note.*/
+    public static final int CLOCKS_PER_QUARTER = 24;
+    //The longest interval between clocks which is still a tempo (about 5 BPM). A longer pause restarts measuring.
+    private static final long MAX_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+    //The smoothing of the interval is 1 / 2^SMOOTHING_SHIFT of each new interval.
+    private static final int SMOOTHING_SHIFT = 3;
+    //The change of tempo, in parts per thousand, which makes waiting tasks rescale.
+    private static final long RESCALE_THRESHOLD = 5;
+
+    private static final Map<String, TempoTracker> TRACKERS = new ConcurrentHashMap<>();
+
+    private final String sourceName;
+    //These are written by the source's thread only.
+    private long lastClock;
+    private long smoothedInterval;
+    private int clockCount;
+    private long publishedQuarter;
+    //The measured length of a quarter note in nanoseconds, or 0 if the tempo is unknown.
+    private volatile long quarterNanos;
+    private volatile long lastClockSeen;
+    //True if the tasks following this tempo must be rescaled by the DelayScheduler.
+    private volatile boolean isRescaleRequested;
+
+    private TempoTracker(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Returns the tracker of received source, creating it if there is none yet.
+     * @param source  a source <code>MidiDevice</code>.
+     * @return the <code>TempoTracker</code> of the source.
+     */
+    public static TempoTracker of(MidiDevice source) {
+        String name = source.getDeviceInfo().getName();
+        return TRACKERS.computeIfAbsent(name != null ? name : "not defined", TempoTracker::new);
+    }
+
+    /**
+     * Returns the trackers of all sources which are receiving Timing Clock at the moment.
+     * @return a <code>List</code> of running <code>TempoTracker</code>s.
+     */
+    public static List<TempoTracker> getRunning() {
+        List<TempoTracker> running = new ArrayList<>();
+        for (TempoTracker tracker : TRACKERS.values()) {
+            if (tracker.isRunning()) {
+                running.add(tracker);
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Returns the trackers of all sources, including the ones which are not running.
+     * @return a <code>Collection</code> of <code>TempoTracker</code>s.
+     */
+    static Collection<TempoTracker> getAll() {
+        return TRACKERS.values();
+    }
+
+    /**
+     * Marks current <code>TempoTracker</code> as changed. Called by the source's thread.
+     * @see DelayScheduler#rescale(TempoTracker)
+     */
+    void requestRescale() {
+        isRescaleRequested = true;
+    }
+
+    /**
+     * Clears the mark of a changed tempo. Called by the scheduler's thread.
+     * @return true if the tempo was marked as changed.
+     */
+    boolean takeRescaleRequest() {
+        if (!isRescaleRequested) {
+            return false;
+        }
+        isRescaleRequested = false;
+        return true;
+    }
+
+    /**
+     * Counts an incoming Timing Clock message. Called by the source's thread.
+     * @param eventTime  the time of the clock, as <code>System.nanoTime()</code>.
+     */
+    public void clock(long eventTime) {
+        long interval = eventTime - lastClock;
+        lastClock = eventTime;
+        lastClockSeen = eventTime;
+        if (interval <= 0 || interval > MAX_INTERVAL) {
+            clockCount = 0;
+            return;
+        }
+        if (clockCount++ == 0) {
+            smoothedInterval = interval;
+        } else {
+            smoothedInterval += (interval - smoothedInterval) >> SMOOTHING_SHIFT;
+        }
+        //The tempo is known after a few clocks.
+        if (clockCount < 4) {
+            return;
+        }
+        long quarter = smoothedInterval * CLOCKS_PER_QUARTER;
+        quarterNanos = quarter;
+        long change = Math.abs(quarter - publishedQuarter) * 1000;
+        if (publishedQuarter == 0 || change > publishedQuarter * RESCALE_THRESHOLD) {
+            publishedQuarter = quarter;
+            DelayScheduler.rescale(this);
+        }
+    }
+
+    /**
+     * Returns true if Timing Clock is coming from the source and the tempo is known.
+     * @return true if the tempo may be used.
+     */
+    public boolean isRunning() {
+        return quarterNanos > 0 && System.nanoTime() - lastClockSeen < MAX_INTERVAL;
+    }
+
+    /**
+     * Returns the measured length of a quarter note.
+     * @return the length in nanoseconds, or 0 if the tempo is unknown.
+     */
+    public long getQuarterNanos() {
+        return isRunning() ? quarterNanos : 0;
+    }
+
+    /**
+     * Returns the measured tempo.
+     * @return the tempo in beats per minute, or 0 if the tempo is unknown.
+     */
+    public double getBpm() {
+        long quarter = getQuarterNanos();
+        return quarter == 0 ? 0 : 60_000_000_000.0 / quarter;
+    }
+
+    /**
+     * Returns the name of the source of current <code>TempoTracker</code>.
+     * @return the name of the source.
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Creates a <code>String</code> describing the tempo of current <code>TempoTracker</code>.
+     * @return the name of the source and it's tempo.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f BPM", sourceName, getBpm());
+    }
+}
@@ -0,0 +1,142 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class limits how often a <code>MidiTellMatch</code> sends it's outgoing messages when it's triggered.
+ * The limits are written as a list of steps separated by <code>;</code>:
+ * <code>debounce ms</code> - a trigger is ignored if the previous trigger, sent or not, came less than
+ * <code>ms</code> milliseconds ago, so a bouncing footswitch fires once;
+ * <code>interval ms</code> - the outgoing messages are sent at most once in <code>ms</code> milliseconds;
+ * <code>rate n [burst]</code> - the outgoing messages are sent at most <code>n</code> times per second, while up to
+ * <code>burst</code> triggers (1 by default) may be sent at once.
+ * For example <code>debounce 5; rate 20 4</code>. All numbers are decimal.
+ * The rate is a token bucket, kept as the time when the bucket will be full again, so every limit is one
+ * <code>AtomicLong</code> which is checked and updated without locking by the source's thread.
+ * @see MidiTellMatch
+ * @see TellMatchRule
+ */
+public class TriggerLimiter {
+    private final String spec;
+    private final long debounceNanos;
+    private final long intervalNanos;
+    //The time of one token and the time of the whole bucket.
+    private final long tokenNanos;
+    private final long burstNanos;
+    //The time of the last trigger, of the last sent trigger and when the bucket will be full.
+    private final AtomicLong lastTrigger;
+    private final AtomicLong lastSent;
+    private final AtomicLong fullAt;
+    private final AtomicLong limited = new AtomicLong();
+
+    private TriggerLimiter(String spec, long debounceNanos, long intervalNanos, long tokenNanos, long burstNanos) {
+        this.spec = spec;
+        this.debounceNanos = debounceNanos;
+        this.intervalNanos = intervalNanos;
+        this.tokenNanos = tokenNanos;
+        this.burstNanos = burstNanos;
+        long longAgo = System.nanoTime() - Math.max(debounceNanos, intervalNanos) - 1;
+        lastTrigger = new AtomicLong(longAgo);
+        lastSent = new AtomicLong(longAgo);
+        fullAt = new AtomicLong(longAgo);
+    }
+
+    /**
+     * Compiles received <code>String</code> to a <code>TriggerLimiter</code>.
+     * @param spec  a <code>String</code> to compile.
+     * @return a compiled <code>TriggerLimiter</code>.
+     * @throws InvalidMidiDataException in case if received <code>String</code> is incorrect.
+     */
+    public static TriggerLimiter compile(String spec) throws InvalidMidiDataException {
+        String[] steps = spec.trim().split("\\s*;\\s*");
+        long debounce = 0;
+        long interval = 0;
+        long token = 0;
+        long burst = 0;
+        try {
+            for (String step : steps) {
+                String[] args = step.split("\\s+");
+                switch (args[0]) {
+                    case "debounce":
+                        debounce = (long) (Double.parseDouble(args[1]) * 1_000_000);
+                        break;
+                    case "interval":
+                        interval = (long) (Double.parseDouble(args[1]) * 1_000_000);
+                        break;
+                    case "rate":
+                        double rate = Double.parseDouble(args[1]);
+                        int burstSize = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+                        if (rate <= 0 || burstSize < 1) {
+                            throw new InvalidMidiDataException("\nInvalid Limits: \n" + step);
+                        }
+                        token = (long) (1_000_000_000 / rate);
+                        burst = token * burstSize;
+                        break;
+                    default:
+                        throw new InvalidMidiDataException("\nInvalid Limits: \nUnknown step " + args[0]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidMidiDataException("\nInvalid Limits: \n" + spec);
+        }
+        if (debounce < 0 || interval < 0) {
+            throw new InvalidMidiDataException("\nInvalid Limits: \n" + spec);
+        }
+        return new TriggerLimiter(spec.trim(), debounce, interval, token, burst);
+    }
+
+    /**
+     * Checks if a trigger which came at received time may be sent, and counts it as sent if it may.
+     * Called by the source's thread for each trigger of the <code>MidiTellMatch</code>.
+     * @param now  the time of the trigger, as <code>System.nanoTime()</code>.
+     * @return true if the outgoing messages may be sent.
+     */
+    public boolean tryAcquire(long now) {
+        //Each trigger restarts the debounce time, even if it's not sent.
+        long previous = lastTrigger.getAndSet(now);
+        if (debounceNanos > 0 && now - previous < debounceNanos) {
+            return deny();
+        }
+        if (intervalNanos > 0 && now - lastSent.get() < intervalNanos) {
+            return deny();
+        }
+        if (tokenNanos > 0) {
+            //Taking a token: the bucket is full again one token later, unless it's more than burst ahead of now.
+            while (true) {
+                long full = fullAt.get();
+                long base = full - now > 0 ? full : now;
+                if (base + tokenNanos - now > burstNanos) {
+                    return deny();
+                }
+                if (fullAt.compareAndSet(full, base + tokenNanos)) {
+                    break;
+                }
+            }
+        }
+        lastSent.set(now);
+        return true;
+    }
+
+    private boolean deny() {
+        limited.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the number of triggers which were not sent because of the limits.
+     * @return the number of limited triggers.
+     */
+    public long getLimitedCount() {
+        return limited.get();
+    }
+
+    /**
+     * Returns the <code>String</code> which current <code>TriggerLimiter</code> was compiled from.
+     * @return a <code>String</code> representation of current <code>TriggerLimiter</code>.
+     */
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
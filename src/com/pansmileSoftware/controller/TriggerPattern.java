@@ -0,0 +1,263 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * This class provides a trigger which can match a whole range of short messages instead of one exact message.
+ * A pattern is written like a usual message, but each byte may be replaced with a set of values:
+ * <code>*</code> for any value, <code>24-33</code> for a range, <code>&gt;40</code> or <code>&lt;40</code> for values
+ * greater or less than the received one, or a comma separated list of all of these.
+ * For example <code>90-9f 24-33 *</code> matches notes 36-51 on any channel with any velocity, and
+ * <code>b0 14-1b &gt;40</code> matches CC 20-27 with value greater than 64 on the first channel.
+ * The status byte may only vary in it's MIDI-channel. Missing data bytes match any value.
+ * Each pattern is compiled into a 16-bit set of channels and two 128-bit sets of data values,
+ * so matching an incoming message takes a few bit tests.
+ * @see MidiTellMatch
+ * @see IncomingMessageReceiver
+ */
+public class TriggerPattern {
+    /**The status byte of a channel message without it's channel, or the whole status byte of a system message.*/
+    private final int command;
+    /**Bit <code>n</code> is set if the pattern matches MIDI-channel <code>n + 1</code>.*/
+    private final int channelMask;
+    private final long data1Low;
+    private final long data1High;
+    private final long data2Low;
+    private final long data2High;
+
+    private TriggerPattern(int command, int channelMask, long[] data1, long[] data2) {
+        this.command = command;
+        this.channelMask = channelMask;
+        this.data1Low = data1[0];
+        this.data1High = data1[1];
+        this.data2Low = data2[0];
+        this.data2High = data2[1];
+    }
+
+    /**
+     * Creates a pattern which matches only received message. The velocity (the last byte of three-byte messages)
+     * may be ignored.
+     * @param message  a <code>ShortMessage</code> to match.
+     * @param ignoreVelocity  true if the last byte of three-byte messages must match any value.
+     * @return a <code>TriggerPattern</code> which matches received message.
+     */
+    public static TriggerPattern of(ShortMessage message, boolean ignoreVelocity) {
+        int status = message.getStatus();
+        long[] data1 = message.getLength() > 1 ? single(message.getData1()) : all();
+        long[] data2 = message.getLength() > 2 && !ignoreVelocity ? single(message.getData2()) : all();
+        if (status >= 0xF0) {
+            return new TriggerPattern(status, 0xFFFF, data1, data2);
+        }
+        return new TriggerPattern(status & 0xF0, 1 << (status & 0x0F), data1, data2);
+    }
+
+    /**
+     * Compiles received <code>String</code> to a <code>TriggerPattern</code>.
+     * @param pattern  a <code>String</code> to compile.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system used in the received pattern.
+     * @return a compiled <code>TriggerPattern</code>.
+     * @throws InvalidMidiDataException in case if received pattern is incorrect.
+     */
+    public static TriggerPattern compile(String pattern, byte radix) throws InvalidMidiDataException {
+        String[] tokens = pattern.trim().split("\\s+");
+        if (tokens.length == 0 || tokens.length > 3 || tokens[0].isEmpty()) {
+            throw new InvalidMidiDataException("\nInvalid Pattern: \n A short message pattern must contain " +
+                    "a status byte and no more than two data bytes");
+        }
+        long[] statuses = parseSet(tokens[0], radix, 0x80, 0xFF);
+        int command = -1;
+        int channelMask = 0;
+        for (int status = 0x80; status <= 0xFF; status++) {
+            if (contains(statuses, status - 0x80)) {
+                int statusCommand = status >= 0xF0 ? status : status & 0xF0;
+                if (command != -1 && command != statusCommand) {
+                    throw new InvalidMidiDataException("\nInvalid Pattern: \n" +
+                            "The status byte may only vary in it's MIDI-channel");
+                }
+                command = statusCommand;
+                channelMask |= status >= 0xF0 ? 0xFFFF : 1 << (status & 0x0F);
+            }
+        }
+        if (command == -1) {
+            throw new InvalidMidiDataException("\nInvalid Pattern: \n The status byte is missing");
+        }
+        long[] data1 = tokens.length > 1 ? parseSet(tokens[1], radix, 0, 127) : all();
+        long[] data2 = tokens.length > 2 ? parseSet(tokens[2], radix, 0, 127) : all();
+        return new TriggerPattern(command, channelMask, data1, data2);
+    }
+
+    /**
+     * Checks if received <code>String</code> should be compiled to a <code>TriggerPattern</code>
+     * instead of being encoded to a <code>MidiMessage</code>.
+     * @param toCheck  a <code>String</code> to check.
+     * @return true if received <code>String</code> contains any of pattern symbols.
+     */
+    public static boolean isPattern(String toCheck) {
+        return toCheck != null && toCheck.matches(".*[*<>,\\-].*");
+    }
+
+    /**
+     * Checks if received packed short message matches current <code>TriggerPattern</code>.
+     * @see MessageDecoder#pack(ShortMessage)
+     * @param packed  a short message packed into an <code>int</code>.
+     * @return true if the message matches.
+     */
+    public boolean matches(int packed) {
+        int status = (packed >> 16) & 0xFF;
+        if (status >= 0xF0 ? status != command : (status & 0xF0) != command
+                || (channelMask & (1 << (status & 0x0F))) == 0) {
+            return false;
+        }
+        int data1 = (packed >> 8) & 0x7F;
+        int data2 = packed & 0x7F;
+        return ((data1 < 64 ? data1Low >>> data1 : data1High >>> (data1 - 64)) & 1) != 0
+                && ((data2 < 64 ? data2Low >>> data2 : data2High >>> (data2 - 64)) & 1) != 0;
+    }
+
+    /**
+     * Returns all status bytes which could be matched by current <code>TriggerPattern</code>.
+     * @return an array of status bytes.
+     */
+    public int[] getStatuses() {
+        if (command >= 0xF0) {
+            return new int[] {command};
+        }
+        int[] statuses = new int[Integer.bitCount(channelMask)];
+        int i = 0;
+        for (int channel = 0; channel < 16; channel++) {
+            if ((channelMask & (1 << channel)) != 0) {
+                statuses[i++] = command + channel;
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Checks if received value could be the first data byte of a matched message.
+     * @param data1  a value to check.
+     * @return true if the first data byte of a matched message could be equal to received value.
+     */
+    public boolean matchesData1(int data1) {
+        return ((data1 < 64 ? data1Low >>> data1 : data1High >>> (data1 - 64)) & 1) != 0;
+    }
+
+    /**
+     * Returns the type of messages matched by current <code>TriggerPattern</code>.
+     * @return a <code>StatusByte</code> which is the type of matched messages.
+     */
+    public StatusByte getType() {
+        return StatusByte.define(command, (byte) 1);
+    }
+
+    /**
+     * Returns the lowest MIDI-channel matched by current <code>TriggerPattern</code>.
+     * Channels numeration starts from 1.
+     * @return a <code>byte</code> which is the MIDI-channel.
+     */
+    public byte getFirstChannel() {
+        return (byte) (Integer.numberOfTrailingZeros(channelMask) + 1);
+    }
+
+    /**
+     * Creates a <code>String</code> representation of current <code>TriggerPattern</code>, which can be compiled
+     * back using the same radix.
+     * @param radix  a <code>byte</code> which is the radix of a numeric system.
+     * @return a <code>String</code> representation of current <code>TriggerPattern</code>.
+     */
+    public String toString(byte radix) {
+        StringBuilder builder = new StringBuilder();
+        if (command >= 0xF0) {
+            builder.append(Integer.toString(command, radix));
+        } else {
+            long[] statuses = new long[2];
+            for (int status : getStatuses()) {
+                statuses[(status - 0x80) >> 6] |= 1L << ((status - 0x80) & 63);
+            }
+            builder.append(setToString(statuses, radix, 0x80));
+        }
+        builder.append(" ").append(setToString(new long[] {data1Low, data1High}, radix, 0));
+        builder.append(" ").append(setToString(new long[] {data2Low, data2High}, radix, 0));
+        return String.valueOf(builder);
+    }
+
+    /**
+     * Parses a set of values. The set is returned as a 128-bit set of offsets from <code>min</code>.
+     */
+    private static long[] parseSet(String token, byte radix, int min, int max) throws InvalidMidiDataException {
+        long[] set = new long[2];
+        try {
+            for (String part : token.split(",")) {
+                int from;
+                int to;
+                if (part.equals("*")) {
+                    from = min;
+                    to = max;
+                } else if (part.startsWith(">")) {
+                    from = Integer.parseInt(part.substring(1), radix) + 1;
+                    to = max;
+                } else if (part.startsWith("<")) {
+                    from = min;
+                    to = Integer.parseInt(part.substring(1), radix) - 1;
+                } else if (part.indexOf('-') > 0) {
+                    from = Integer.parseInt(part.substring(0, part.indexOf('-')), radix);
+                    to = Integer.parseInt(part.substring(part.indexOf('-') + 1), radix);
+                } else {
+                    from = Integer.parseInt(part, radix);
+                    to = from;
+                }
+                if (from < min || to > max || from > to) {
+                    throw new InvalidMidiDataException("\nInvalid Pattern: \n" + part + " is out of range");
+                }
+                for (int value = from; value <= to; value++) {
+                    set[(value - min) >> 6] |= 1L << ((value - min) & 63);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidMidiDataException("\nInvalid Pattern: \n" + token);
+        }
+        return set;
+    }
+
+    //Writes a 128-bit set as a comma separated list of values and ranges.
+    private static String setToString(long[] set, byte radix, int min) {
+        if (set[0] == -1L && set[1] == -1L && min == 0) {
+            return "*";
+        }
+        StringBuilder builder = new StringBuilder();
+        int value = 0;
+        while (value < 128) {
+            if (!contains(set, value)) {
+                value++;
+                continue;
+            }
+            int end = value;
+            while (end + 1 < 128 && contains(set, end + 1)) {
+                end++;
+            }
+            if (builder.length() > 0) {
+                builder.append(",");
+            }
+            builder.append(Integer.toString(value + min, radix));
+            if (end > value) {
+                builder.append("-").append(Integer.toString(end + min, radix));
+            }
+            value = end + 1;
+        }
+        return String.valueOf(builder);
+    }
+
+    private static boolean contains(long[] set, int value) {
+        return ((set[value >> 6] >>> (value & 63)) & 1) != 0;
+    }
+
+    private static long[] single(int value) {
+        long[] set = new long[2];
+        set[value >> 6] = 1L << (value & 63);
+        return set;
+    }
+
+    private static long[] all() {
+        return new long[] {-1L, -1L};
+    }
+}
@@ -0,0 +1,106 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+/**
+ * This class provides a transformation of the value byte of incoming short messages (the CC value, the velocity,
+ * the program number and so on), which is put into the outgoing message instead of it's own value.
+ * A transform is written as a list of steps separated by <code>;</code>, which are applied in order:
+ * <code>scale min max</code>, <code>invert</code>, <code>offset n</code> and <code>curve exponent</code>.
+ * For example <code>invert; curve 2; scale 20 100</code>. All numbers are decimal.
+ * The transform is compiled into a 128-entry lookup table, so transforming a value takes one array read.
+ * @see MidiTellMatch
+ * @see MessageEncoder#encodeValue(javax.sound.midi.ShortMessage, int)
+ */
+public class ValueTransform {
+    private final String spec;
+    private final byte[] table;
+
+    private ValueTransform(String spec, byte[] table) {
+        this.spec = spec;
+        this.table = table;
+    }
+
+    /**
+     * Compiles received <code>String</code> to a <code>ValueTransform</code>.
+     * @param spec  a <code>String</code> to compile.
+     * @return a compiled <code>ValueTransform</code>.
+     * @throws InvalidMidiDataException in case if received <code>String</code> is incorrect.
+     */
+    public static ValueTransform compile(String spec) throws InvalidMidiDataException {
+        String[] steps = spec.trim().split("\\s*;\\s*");
+        double[] values = new double[128];
+        for (int i = 0; i < 128; i++) {
+            values[i] = i;
+        }
+        try {
+            for (String step : steps) {
+                String[] args = step.split("\\s+");
+                switch (args[0]) {
+                    case "scale":
+                        double min = Double.parseDouble(args[1]);
+                        double max = Double.parseDouble(args[2]);
+                        for (int i = 0; i < 128; i++) {
+                            values[i] = min + values[i] * (max - min) / 127;
+                        }
+                        break;
+                    case "invert":
+                        for (int i = 0; i < 128; i++) {
+                            values[i] = 127 - values[i];
+                        }
+                        break;
+                    case "offset":
+                        double offset = Double.parseDouble(args[1]);
+                        for (int i = 0; i < 128; i++) {
+                            values[i] += offset;
+                        }
+                        break;
+                    case "curve":
+                        double exponent = Double.parseDouble(args[1]);
+                        for (int i = 0; i < 128; i++) {
+                            values[i] = 127 * Math.pow(Math.max(0, Math.min(127, values[i])) / 127, exponent);
+                        }
+                        break;
+                    default:
+                        throw new InvalidMidiDataException("\nInvalid Transform: \nUnknown step " + args[0]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new InvalidMidiDataException("\nInvalid Transform: \n" + spec);
+        }
+        byte[] table = new byte[128];
+        for (int i = 0; i < 128; i++) {
+            table[i] = (byte) Math.max(0, Math.min(127, Math.round(values[i])));
+        }
+        return new ValueTransform(spec.trim(), table);
+    }
+
+    /**
+     * Returns the transformed value.
+     * @param value  a value from 0 to 127 to transform.
+     * @return the transformed value.
+     */
+    public int apply(int value) {
+        return table[value & 0x7F];
+    }
+
+    /**
+     * Returns the value byte of received packed short message. It's the first data byte of Program Change and
+     * Channel Pressure messages and the second one of other messages.
+     * @see MessageDecoder#pack(javax.sound.midi.ShortMessage)
+     * @param packed  a short message packed into an <code>int</code>.
+     * @return the value byte of the message.
+     */
+    public static int valueOf(int packed) {
+        int command = (packed >> 16) & 0xF0;
+        return (command == 0xC0 || command == 0xD0) ? (packed >> 8) & 0x7F : packed & 0x7F;
+    }
+
+    /**
+     * Returns the <code>String</code> which current <code>ValueTransform</code> was compiled from.
+     * @return a <code>String</code> representation of current <code>ValueTransform</code>.
+     */
+    public String toString() {
+        return spec;
+    }
+}
@@ -1,28 +1,77 @@
 package com.pansmileSoftware.model;
 
+import com.pansmileSoftware.controller.CaptureLog;
+import com.pansmileSoftware.controller.DelayScheduler;
 import com.pansmileSoftware.controller.MessageInfo;
 
+import javax.swing.Timer;
 import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a model for main table of <code>MonitorView</code> that included in MIDI Tell-Match app.
+ * The rows are kept in a ring buffer: a new row overwrites the oldest one when there are <code>maxRowCount</code>
+ * rows, so adding a row costs the same at any history size. The buffer grows by doubling up to
+ * <code>maxRowCount</code>, so a big history takes memory only when it's filled. Each change fires only
+ * the event for the inserted or deleted rows, so the parent <code>JTable</code> doesn't redraw all of them.
+ * Rows may be added from any thread: they are put into a lock-free queue, which is drained on the GUI thread
+ * by a Swing <code>Timer</code> at the refresh rate, so a MIDI thread never waits for Swing and each refresh fires
+ * one event for all the rows added since the previous one. The rows themselves are changed on the GUI thread only.
+ * The strings of a row are made only when the row is drawn, and the last drawn rows are kept formatted,
+ * so scrolling and repainting don't format them again. The radix and the parts of the data column are
+ * settings of the view: changing them forgets the formatted rows, so only the rows which are drawn are formatted again.
+ * For long sessions the rows may be recorded to disk instead: then they are appended to a {@link CaptureLog}
+ * without a limit, and only the rows which are drawn are read from it.
  * @see MonitorView
  * @see com.pansmileSoftware.controller.MidiMonitor
  * @see MessageInfo
  */
 public class MonitorTableModel extends AbstractTableModel {
-    private List<MessageInfo> infoList;
-    private int maxRowCount;
+    /**The default number of refreshes per second.*/
+    public static final int DEFAULT_REFRESH_RATE = 30;
+    //The initial length of the ring buffer.
+    private static final int INITIAL_CAPACITY = 1024;
+    //The number of formatted rows which are kept, which is more than a screen of rows.
+    private static final int FORMATTED_ROW_COUNT = 256;
+    //The rows which were added, but are not shown yet, and their number.
+    private final ConcurrentLinkedQueue<MessageInfo> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final Timer refreshTimer;
+    //The formatted rows by their sequence numbers, the least recently drawn one goes first.
+    private final Map<Long, String[]> formattedRows =
+            new LinkedHashMap<Long, String[]>(FORMATTED_ROW_COUNT * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+                    return size() > FORMATTED_ROW_COUNT;
+                }
+            };
+    private MessageInfo[] rows;
+    //The index of the oldest row in the ring buffer and the number of rows.
+    private int head;
+    private int size;
+    //The sequence number of the oldest row in the ring buffer, which grows when the oldest rows are removed.
+    private long firstSequence;
+    private volatile int maxRowCount;
+    //The log where the rows are recorded to disk, or null if they are kept in the ring buffer.
+    private CaptureLog log;
+    //The settings of formatting the data column.
+    private byte radix = 16;
+    private boolean showMessageData = true;
+    private boolean showMessageInfo = true;
 
     /**
-     * Initializes infoList as empty <code>ArrayList</code> and gives to <code>maxRowCount</code> it's
-     * default value.
+     * Initializes an empty ring buffer, gives to <code>maxRowCount</code> it's default value and starts
+     * refreshing the parent <code>JTable</code> at the default refresh rate.
      */
     public MonitorTableModel(){
-        infoList = new ArrayList<>();
         maxRowCount = 1000;
+        rows = new MessageInfo[Math.min(INITIAL_CAPACITY, maxRowCount)];
+        refreshTimer = new Timer(1000 / DEFAULT_REFRESH_RATE, e -> flush());
+        refreshTimer.start();
     }
 
     /**
@@ -35,12 +84,12 @@ public class MonitorTableModel extends AbstractTableModel {
     }
 
     /**
-     * Returns the rows count, which equals <code>infoList.size()</code>.
+     * Returns the rows count.
      * @return the parent <code>JTable</code> rows count.
      */
     @Override
     public int getRowCount() {
-        return infoList.size();
+        return log != null ? (int) Math.min(log.size(), Integer.MAX_VALUE) : size;
     }
 
     /**
@@ -51,20 +100,21 @@ public class MonitorTableModel extends AbstractTableModel {
      */
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        switch (columnIndex) {
-            case 0:
-                return (infoList.get(rowIndex).getTime());
-            case 1:
-                return infoList.get(rowIndex).getDeviceAlignment();
-            case 2:
-                return infoList.get(rowIndex).getType();
-            case 3:
-                return infoList.get(rowIndex).getChannel();
-            case 4:
-                return infoList.get(rowIndex).getMessage();
-            default:
+        if (rowIndex < 0 || rowIndex >= getRowCount() || columnIndex < 0 || columnIndex >= getColumnCount()) {
+            return "";
+        }
+        //Formatting the row when it's drawn for the first time.
+        long sequence = log != null ? rowIndex : firstSequence + rowIndex;
+        String[] row = formattedRows.get(sequence);
+        if (row == null) {
+            MessageInfo info = getInfo(rowIndex);
+            if (info == null) {
                 return "";
+            }
+            row = info.toRow(radix, showMessageData, showMessageInfo);
+            formattedRows.put(sequence, row);
         }
+        return row[columnIndex];
     }
 
     /**
@@ -88,68 +138,345 @@ public class MonitorTableModel extends AbstractTableModel {
             default: return "";
         }
     }
+
     /**
-     * Adds received {@link MessageInfo} to the infoList, deletes items from beginning of
-     * it if it's size is bigger than maxRowCount. Fires redrawing of the parent <code>JTable</code>.
+     * Returns the {@link MessageInfo} of the row with received index.
+     * @param rowIndex  index of a row, counted from the oldest one.
+     * @return a <code>MessageInfo</code>, or null if there is no such row.
+     */
+    public MessageInfo getInfo(int rowIndex) {
+        if (log != null) {
+            return log.read(rowIndex);
+        }
+        if (rowIndex < 0 || rowIndex >= size) {
+            return null;
+        }
+        return rows[toIndex(rowIndex)];
+    }
+
+    /**
+     * Puts received {@link MessageInfo} into the queue of rows to add at the next refresh. Never blocks,
+     * so it may be called from any thread. If <code>maxRowCount</code> rows are already waiting,
+     * the row is only counted as dropped.
      * @param info  information about a MIDI-message to add.
      */
     public void add(MessageInfo info) {
-        synchronized (this) {
-            infoList.add(infoList.size(),info);
-            if (infoList.size() > maxRowCount) {
-                infoList.remove(0);
+        if (pendingCount.incrementAndGet() > maxRowCount) {
+            pendingCount.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        pending.offer(info);
+    }
+
+    /**
+     * Adds the waiting rows after the last row, overwriting the oldest rows if there are already
+     * <code>maxRowCount</code> rows. Fires one deletion of the overwritten rows and one insertion of the new ones.
+     * Called by the refresh timer on the GUI thread.
+     */
+    private void flush() {
+        if (log != null) {
+            flushToLog();
+            return;
+        }
+        int oldSize = size;
+        int added = 0;
+        int overwritten = 0;
+        MessageInfo info;
+        while ((info = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if (addToRing(info)) {
+                overwritten++;
+            }
+            added++;
+        }
+        if (added == 0) {
+            return;
+        }
+        //The rows which were shown before and are overwritten now, and the new rows which are still kept.
+        int deleted = Math.min(oldSize, overwritten);
+        int inserted = size - (oldSize - deleted);
+        if (deleted > 0) {
+            fireTableRowsDeleted(0, deleted - 1);
+        }
+        fireTableRowsInserted(size - inserted, size - 1);
+    }
+
+    /**
+     * Appends the waiting rows to the <code>CaptureLog</code> and fires one insertion of them. The rows which
+     * can't be written are counted as dropped.
+     */
+    private void flushToLog() {
+        int oldCount = getRowCount();
+        MessageInfo info;
+        while ((info = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            try {
+                log.append(info);
+            } catch (IOException e) {
+                dropped.incrementAndGet();
             }
         }
+        int newCount = getRowCount();
+        if (newCount > oldCount) {
+            fireTableRowsInserted(oldCount, newCount - 1);
+        }
+    }
 
+    /**
+     * Adds received row after the last one in the ring buffer, growing the buffer up to <code>maxRowCount</code>
+     * or overwriting the oldest row.
+     * @param info  a <code>MessageInfo</code> to add.
+     * @return true if the oldest row was overwritten.
+     */
+    private boolean addToRing(MessageInfo info) {
+        if (size == rows.length && rows.length < maxRowCount) {
+            resize(Math.min(rows.length * 2, maxRowCount));
+        }
+        if (size == rows.length) {
+            rows[head] = info;
+            head = next(head);
+            firstSequence++;
+            return true;
+        }
+        rows[toIndex(size)] = info;
+        size++;
+        return false;
+    }
 
+    /**
+     * Starts or stops recording the rows to disk. When the recording starts, the rows which are in the table are
+     * written to a new <code>CaptureLog</code>. When it stops, the last <code>maxRowCount</code> rows are kept
+     * in memory and the log is deleted. Must be called on the GUI thread.
+     * @param isRecording  true to record the rows to disk.
+     * @throws IOException in case if the log can't be created.
+     */
+    public void setRecordingToDisk(boolean isRecording) throws IOException {
+        if (isRecording == (log != null)) {
+            return;
+        }
+        if (isRecording) {
+            CaptureLog newLog = new CaptureLog();
+            for (int i = 0; i < size; i++) {
+                newLog.append(rows[toIndex(i)]);
+            }
+            log = newLog;
+            resetRing();
+        } else {
+            CaptureLog oldLog = log;
+            log = null;
+            resetRing();
+            long from = Math.max(0, oldLog.size() - maxRowCount);
+            for (long i = from; i < oldLog.size(); i++) {
+                addToRing(oldLog.read(i));
+            }
+            oldLog.close();
+        }
+        formattedRows.clear();
         fireTableDataChanged();
     }
+
+    /**
+     * Returns true if the rows are recorded to disk.
+     * @return true if the rows are kept in a <code>CaptureLog</code>.
+     */
+    public boolean isRecordingToDisk() {
+        return log != null;
+    }
+
+    /**
+     * Returns the number of bytes taken on disk by the recorded rows.
+     * @return the size of the log in bytes, or 0 if the rows are not recorded to disk.
+     */
+    public long getDiskSize() {
+        return log != null ? log.getDiskSize() : 0;
+    }
+
+    //Makes the ring buffer empty.
+    private void resetRing() {
+        rows = new MessageInfo[Math.min(INITIAL_CAPACITY, maxRowCount)];
+        head = 0;
+        size = 0;
+        firstSequence = 0;
+    }
+
     /**
-     * Removes all data from infoList and fires redrawing of parent <code>JTable</code>.
+     * Removes all rows, including the ones which are not shown yet, and fires their deletion from
+     * parent <code>JTable</code>. Must be called on the GUI thread.
      */
     public void clear() {
-        infoList.clear();
-        fireTableDataChanged();
+        while (pending.poll() != null) {
+            pendingCount.decrementAndGet();
+        }
+        int removed = getRowCount();
+        if (log != null) {
+            log.clear();
+        }
+        Arrays.fill(rows, null);
+        formattedRows.clear();
+        head = 0;
+        size = 0;
+        firstSequence = 0;
+        if (removed > 0) {
+            fireTableRowsDeleted(0, removed - 1);
+        }
     }
 
     /**
-     * Removes an element of received index from infoList and fires redrawing of parent <code>JTable</code>.
+     * Removes a row of received index and fires it's deletion from parent <code>JTable</code>.
+     * Removing the oldest row is cheap, other rows are shifted. Rows recorded to disk can't be removed.
+     * Must be called on the GUI thread.
      */
     public void remove(int index) {
-        infoList.remove(index);
-        fireTableDataChanged();
+        if (log != null || index < 0 || index >= size) {
+            return;
+        }
+        formattedRows.clear();
+        //Shifting the newer rows to the place of the removed one.
+        for (int i = index; i < size - 1; i++) {
+            rows[toIndex(i)] = rows[toIndex(i + 1)];
+        }
+        rows[toIndex(size - 1)] = null;
+        size--;
+        fireTableRowsDeleted(index, index);
     }
 
     /**
      * Adds Received <code>MessageInfo</code> to the parent <code>JTable</code> after waiting for an amount of
-     * microseconds that <code>latencyStamp</code>.
+     * microseconds that <code>latencyStamp</code>. The waiting is done by the shared {@link DelayScheduler}.
      * @param info  a <code>MessageInfo</code> to add.
      * @param latencyStamp  an amount of microseconds to wait for.
      */
     public void addWithLatencyStamp(MessageInfo info, long latencyStamp) {
-        Thread delay = new Thread() {
-            @Override
-            public void run() {
-                try {
-                    TimeUnit.MICROSECONDS.sleep(latencyStamp);
-                    info.changeTime();
-                    add(info);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        };
-        delay.start();
+        DelayScheduler.schedule(() -> {
+            info.changeTime();
+            add(info);
+        }, latencyStamp);
     }
 
     /**
-     * Sets <code>maxRowCount</code> according to received value.
-     * @param maxRowCount  an <vode>int</vode> which is the count of rows,
+     * Sets <code>maxRowCount</code> according to received value. If there are more rows, the oldest ones
+     * are removed and their deletion is fired. Must be called on the GUI thread.
+     * @param maxRowCount  an <code>int</code> which is the count of rows,
      * which will be shown in parent <code>JTable</code>
      */
     public void setMaxRowCount(int maxRowCount) {
-        this.maxRowCount = maxRowCount;
+        this.maxRowCount = Math.max(1, maxRowCount);
+        int removed = Math.max(0, size - this.maxRowCount);
+        if (rows.length > this.maxRowCount) {
+            resize(this.maxRowCount);
+        }
+        firstSequence += removed;
+        if (removed > 0) {
+            fireTableRowsDeleted(0, removed - 1);
+        }
     }
 
-}
+    /**
+     * Sets the radix of numeric system which is used to show the data of all the messages, including the ones
+     * which are already in the table. Must be called on the GUI thread.
+     * @param radix  a radix to set.
+     */
+    public void setRadix(byte radix) {
+        this.radix = radix;
+        reformat();
+    }
+
+    /**
+     * Defines if the data of the messages is shown, including the ones which are already in the table.
+     * Must be called on the GUI thread.
+     * @param showMessageData  true if we need to show message's data.
+     */
+    public void setShowMessageData(boolean showMessageData) {
+        this.showMessageData = showMessageData;
+        reformat();
+    }
+
+    /**
+     * Defines if the detailed description of the messages is shown, including the ones which are already
+     * in the table. Must be called on the GUI thread.
+     * @param showMessageInfo  true if we need to show detailed descriptions.
+     */
+    public void setShowMessageInfo(boolean showMessageInfo) {
+        this.showMessageInfo = showMessageInfo;
+        reformat();
+    }
+
+    /**
+     * Forgets the formatted rows and fires the update of all rows, so the parent <code>JTable</code> formats again
+     * only the rows which it draws.
+     */
+    private void reformat() {
+        formattedRows.clear();
+        //While recording to disk the rows are read from the log, so the number of rows is asked for.
+        int rowCount = getRowCount();
+        if (rowCount > 0) {
+            fireTableRowsUpdated(0, rowCount - 1);
+        }
+    }
+
+    /**
+     * Sets the number of refreshes of the parent <code>JTable</code> per second.
+     * @param refreshRate  a rate from 1 to 1000 Hz.
+     */
+    public void setRefreshRate(int refreshRate) {
+        int delay = 1000 / Math.max(1, Math.min(1000, refreshRate));
+        refreshTimer.setDelay(delay);
+        refreshTimer.setInitialDelay(delay);
+    }
+
+    /**
+     * Returns the number of refreshes of the parent <code>JTable</code> per second.
+     * @return the refresh rate in Hz.
+     */
+    public int getRefreshRate() {
+        return 1000 / refreshTimer.getDelay();
+    }
 
+    /**
+     * Returns the number of rows which were dropped because too many of them were waiting for a refresh,
+     * and resets it.
+     * @return the number of dropped rows since the last call.
+     */
+    public int takeDropped() {
+        return dropped.getAndSet(0);
+    }
+
+    /**
+     * Stops refreshing the parent <code>JTable</code>. Called when the monitor's window is closed.
+     */
+    public void stop() {
+        refreshTimer.stop();
+        clear();
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Copies the newest rows to a new ring buffer of received length, starting from it's beginning.
+     * @param length  the length of the new ring buffer.
+     */
+    private void resize(int length) {
+        MessageInfo[] resized = new MessageInfo[length];
+        int kept = Math.min(size, length);
+        for (int i = 0; i < kept; i++) {
+            resized[i] = rows[toIndex(size - kept + i)];
+        }
+        rows = resized;
+        head = 0;
+        size = kept;
+    }
+
+    //Converts the index of a row to the index in the ring buffer.
+    private int toIndex(int rowIndex) {
+        int index = head + rowIndex;
+        return index < rows.length ? index : index - rows.length;
+    }
+
+    //Returns the index in the ring buffer which follows received one.
+    private int next(int index) {
+        return index + 1 < rows.length ? index + 1 : 0;
+    }
+}
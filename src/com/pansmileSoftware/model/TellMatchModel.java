@@ -8,13 +8,13 @@ import javax.swing.*;
  * This is a model for list of <code>MidiTellMatch</code>es. It provides safe deleting elements.
  */
 public class TellMatchModel extends DefaultListModel<MidiTellMatch> {
-    //Every time we delete a MIDI Tell-Match we have to close it's sourceTransmitter to prevent
+    //Every time we delete a MIDI Tell-Match we have to disconnect it from it's source to prevent
     //deleted Tell-Match from continue working.
     @Override
     public void clear() {
         for (int i = 0; i < getSize(); i++) {
             MidiTellMatch tellMatch = get(i);
-            tellMatch.getSourceTransmitter().close();
+            tellMatch.disconnect();
         }
         super.clear();
     }
@@ -22,14 +22,14 @@ public class TellMatchModel extends DefaultListModel<MidiTellMatch> {
     @Override
     public boolean removeElement(Object obj) {
         MidiTellMatch tellMatch = (MidiTellMatch) obj;
-        tellMatch.getSourceTransmitter().close();
+        tellMatch.disconnect();
         return super.removeElement(obj);
     }
 
     @Override
     public void removeElementAt(int index) {
         MidiTellMatch tellMatch = get(index);
-        tellMatch.getSourceTransmitter().close();
+        tellMatch.disconnect();
         super.remove(index);
     }
 
@@ -37,7 +37,7 @@ public class TellMatchModel extends DefaultListModel<MidiTellMatch> {
     public void removeAllElements() {
         for (int i = 0; i < getSize(); i++) {
             MidiTellMatch tellMatch = get(i);
-            tellMatch.getSourceTransmitter().close();
+            tellMatch.disconnect();
         }
         super.removeAllElements();
     }
@@ -47,7 +47,7 @@ public class TellMatchModel extends DefaultListModel<MidiTellMatch> {
         if (fromIndex < toIndex) {
             for (int i = toIndex; i >= fromIndex; i--) {
                 MidiTellMatch tellMatch = get(i);
-                tellMatch.getSourceTransmitter().close();
+                tellMatch.disconnect();
             }
             super.removeRange(fromIndex, toIndex);
         } else {
@@ -63,14 +63,14 @@ public class TellMatchModel extends DefaultListModel<MidiTellMatch> {
     @Override
     public MidiTellMatch remove(int index) {
         MidiTellMatch tellMatch = get(index);
-        tellMatch.getSourceTransmitter().close();
+        tellMatch.disconnect();
         return super.remove(index);
     }
 
     @Override
     public void setElementAt(MidiTellMatch element, int index) {
         MidiTellMatch tellMatch = get(index);
-        tellMatch.getSourceTransmitter().close();
+        tellMatch.disconnect();
         super.setElementAt(element, index);
     }
 
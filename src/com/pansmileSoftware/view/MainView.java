@@ -27,7 +27,7 @@ import java.util.List;
  * @see AutoCompletion
  * @see MidiDeviceReceiver
  */
-public class MainView extends JFrame {
+public class MainView extends JFrame implements TellMatchListener {
     private JPanel rootPanel;
     private JList<MidiDevice> sources;
     private JScrollPane tellmatchscroll;
@@ -69,6 +69,11 @@ public class MainView extends JFrame {
     private MainView thisApp;
     private MidiTellMatch currentTellMatch;
     private ArrayList<MidiMonitor> monitorList;
+    //The period of checking for failures reported by the MIDI threads, in milliseconds.
+    private static final int ERRORS_CHECK_PERIOD = 500;
+    //The maximum number of failures listed in one message.
+    private static final int ERRORS_SHOWN = 10;
+    private boolean isShowingErrors;
 
     /**
      * Constructs a new instance of MainView
@@ -275,6 +280,12 @@ public class MainView extends JFrame {
                     if (tellMatch.getTriggerMessage() != null) {
                         tellMatch.setTriggerString(MessageDecoder.decode(tellMatch.getTriggerMessage(),
                                 tellMatch.getRadix()));
+                    } else if (tellMatch.getTriggerPattern() != null) {
+                        tellMatch.setTriggerString(tellMatch.getTriggerPattern().toString(tellMatch.getRadix()));
+                    } else if (tellMatch.getSysexPattern() != null) {
+                        tellMatch.setTriggerString(tellMatch.getSysexPattern().toString(tellMatch.getRadix()));
+                    } else if (tellMatch.getSequenceTrigger() != null) {
+                        tellMatch.setTriggerString(tellMatch.getSequenceTrigger().toString(tellMatch.getRadix()));
                     }
                     triggerMessage.setText(currentTellMatch.getTriggerString());
                     outgoingMessage.setText(currentTellMatch.getOutgoingString());
@@ -740,6 +751,13 @@ public class MainView extends JFrame {
             }
         });
 
+        //Adding the context menu with additional settings of selected MIDI Tell-Matches.
+        midiTellMatches.setComponentPopupMenu(createTellMatchMenu());
+        //Adding the context menu with the output settings of destinations.
+        destinations.setComponentPopupMenu(createDestinationMenu());
+        //Showing the failures reported by the MIDI threads.
+        new javax.swing.Timer(ERRORS_CHECK_PERIOD, e -> showRoutingErrors()).start();
+
         pack();
         setMaximumSize(new Dimension(900, 400));
         setMinimumSize(new Dimension(800, 350));
@@ -759,6 +777,12 @@ public class MainView extends JFrame {
     private void encodeMessage(JTextField messageField, MessageSwitchModel messageTypeModel,
                                JComboBox<Byte> channelSwitch, String key) {
         String toEncode = messageField.getText();
+        //Trigger patterns are compiled using the radix of each Tell-Match instead of being encoded.
+        if (key.equals("trigger") && (SequenceTrigger.isSequence(toEncode) || SysexPattern.isPattern(toEncode)
+                || TriggerPattern.isPattern(toEncode))) {
+            compileTriggerPattern(messageField, messageTypeModel, channelSwitch);
+            return;
+        }
         //Trying to encode the channel with each radix. encodeChannel() method returns -1 if radix is incorrect;
         byte possibleRadix = 16;
         byte channel = MessageEncoder.encodeChannel(toEncode, possibleRadix);
@@ -821,6 +845,330 @@ public class MainView extends JFrame {
     }
 
 
+    /**
+     * Creates the context menu of the MIDI Tell-Matches list. It gives access to the settings which have no
+     * controls in the main frame.
+     * @return a <code>JPopupMenu</code> for the list of MIDI Tell-Matches.
+     */
+    private JPopupMenu createTellMatchMenu() {
+        JPopupMenu menu = new JPopupMenu();
+
+        //Setting the value transform of selected Tell-Matches.
+        JMenuItem transformItem = new JMenuItem("Value transform...");
+        transformItem.addActionListener(e -> {
+            if (currentTellMatch == null) {
+                return;
+            }
+            ValueTransform current = currentTellMatch.getValueTransform();
+            String spec = (String) JOptionPane.showInputDialog(this, "Steps applied to the incoming value, " +
+                            "e.g. \"invert; curve 2; scale 20 100; offset -5\".\n" +
+                            "Leave it empty to send the outgoing message as is.", "Value transform",
+                    JOptionPane.PLAIN_MESSAGE, null, null, current == null ? "" : current.toString());
+            if (spec == null) {
+                return;
+            }
+            try {
+                ValueTransform transform = spec.trim().isEmpty() ? null : ValueTransform.compile(spec);
+                for (MidiTellMatch tellMatch : midiTellMatches.getSelectedValuesList()) {
+                    tellMatch.setValueTransform(transform);
+                }
+            } catch (InvalidMidiDataException e28) {
+                showInvalidMidiDataDialog(e28);
+            }
+        });
+        menu.add(transformItem);
+
+        //Setting the macro of selected Tell-Matches.
+        JMenuItem macroItem = new JMenuItem("Macro...");
+        macroItem.addActionListener(e -> {
+            if (currentTellMatch == null) {
+                return;
+            }
+            OutgoingMacro current = currentTellMatch.getMacro();
+            String spec = (String) JOptionPane.showInputDialog(this, "Messages sent after the outgoing message, " +
+                            "separated by \";\". A message may start with a delay in milliseconds,\n" +
+                            "e.g. \"c0 5; +20 b0 7 64; b0 a 40\". Leave it empty to send the outgoing message only.",
+                    "Macro", JOptionPane.PLAIN_MESSAGE, null, null,
+                    current == null ? "" : current.toString(currentTellMatch.getRadix()));
+            if (spec == null) {
+                return;
+            }
+            try {
+                for (MidiTellMatch tellMatch : midiTellMatches.getSelectedValuesList()) {
+                    tellMatch.setMacro(spec.trim().isEmpty() ? null
+                            : OutgoingMacro.compile(spec, tellMatch.getRadix()));
+                }
+            } catch (InvalidMidiDataException e29) {
+                showInvalidMidiDataDialog(e29);
+            }
+        });
+        menu.add(macroItem);
+
+        //Setting the limits of sending of selected Tell-Matches.
+        JMenuItem limitsItem = new JMenuItem("Limits...");
+        limitsItem.addActionListener(e -> {
+            if (currentTellMatch == null) {
+                return;
+            }
+            TriggerLimiter current = currentTellMatch.getLimiter();
+            String spec = (String) JOptionPane.showInputDialog(this, "Limits of sending, separated by \";\": " +
+                            "\"debounce ms\", \"interval ms\" and \"rate per-second [burst]\",\n" +
+                            "e.g. \"debounce 5; rate 20 4\". Leave it empty to send on every trigger.", "Limits",
+                    JOptionPane.PLAIN_MESSAGE, null, null, current == null ? "" : current.toString());
+            if (spec == null) {
+                return;
+            }
+            try {
+                for (MidiTellMatch tellMatch : midiTellMatches.getSelectedValuesList()) {
+                    //Each Tell-Match gets it's own limiter, so they are limited independently.
+                    tellMatch.setLimiter(spec.trim().isEmpty() ? null : TriggerLimiter.compile(spec));
+                }
+            } catch (InvalidMidiDataException e30) {
+                showInvalidMidiDataDialog(e30);
+            }
+        });
+        menu.add(limitsItem);
+
+        //Setting the tempo-synced delay of selected Tell-Matches.
+        JMenuItem delayItem = new JMenuItem("Tempo-synced delay...");
+        delayItem.addActionListener(e -> {
+            if (currentTellMatch == null) {
+                return;
+            }
+            NoteValue current = currentTellMatch.getNoteDelay();
+            String spec = (String) JOptionPane.showInputDialog(this, "The delay as a note value, " +
+                            "e.g. \"1/8\", \"1/16.\" (dotted) or \"1/4t\" (triplet).\n" +
+                            "It follows the Timing Clock of the source, while there is no clock the latency " +
+                            "compensation is used. Leave it empty to use the latency compensation only.",
+                    "Tempo-synced delay", JOptionPane.PLAIN_MESSAGE, null, null,
+                    current == null ? "" : current.toString());
+            if (spec == null) {
+                return;
+            }
+            try {
+                NoteValue noteDelay = spec.trim().isEmpty() ? null : NoteValue.compile(spec);
+                for (MidiTellMatch tellMatch : midiTellMatches.getSelectedValuesList()) {
+                    tellMatch.setNoteDelay(noteDelay);
+                }
+            } catch (InvalidMidiDataException e31) {
+                showInvalidMidiDataDialog(e31);
+            }
+        });
+        menu.add(delayItem);
+
+        return menu;
+    }
+
+    /**
+     * Creates the context menu of the destinations list. It gives access to the output queue settings of the
+     * selected destinations and shows the metrics of their queues.
+     * @return a <code>JPopupMenu</code> for the list of destinations.
+     */
+    private JPopupMenu createDestinationMenu() {
+        JPopupMenu menu = new JPopupMenu();
+
+        JMenuItem outputItem = new JMenuItem("Output settings...");
+        outputItem.addActionListener(e -> {
+            List<MidiDevice> selected = destinations.getSelectedValuesList();
+            if (selected.isEmpty()) {
+                return;
+            }
+            DestinationSettings first = DestinationSettings.of(selected.get(0));
+            JComboBox<OverflowPolicy> policyBox = new JComboBox<>(OverflowPolicy.values());
+            policyBox.setSelectedItem(first.getOverflowPolicy());
+            JSpinner capacitySpinner = new JSpinner(new SpinnerNumberModel(first.getCapacity(), 1, 65536, 64));
+            JSpinner rateSpinner = new JSpinner(new SpinnerNumberModel(first.getMaxRate(), 0, 10000, 10));
+            JCheckBox timestampBox = new JCheckBox("Let software synthesizers schedule delayed messages",
+                    first.isTimestamped());
+            //Hardware ports send every message at once, so only a synthesizer can use timestamps.
+            boolean isCapable = false;
+            for (MidiDevice device : selected) {
+                isCapable |= PooledReceiver.isTimestampCapable(device);
+            }
+            timestampBox.setEnabled(isCapable);
+            timestampBox.setToolTipText("<html>Only for software synthesizers, which play timestamped messages "
+                    + "at their time.<br>Hardware MIDI ports ignore timestamps, so their delayed messages "
+                    + "are always sent on time by the application.</html>");
+            JSpinner compensationSpinner = new JSpinner(
+                    new SpinnerNumberModel(first.getCompensation() / 1000.0, 0.0, 10000.0, 0.5));
+
+            //Showing the metrics of the queues which are in use.
+            StringBuilder stats = new StringBuilder();
+            for (MidiDevice device : selected) {
+                PooledReceiver receiver = ReceiverPool.get(device);
+                stats.append(receiver != null ? receiver.getOutput().getStats()
+                        : DestinationSettings.of(device).getDeviceName() + ": not in use").append("\n");
+                DestinationSettings settings = DestinationSettings.of(device);
+                if (settings.getMeasuredLatency() >= 0) {
+                    stats.append(String.format("    measured round trip: p50 %.2f ms, p99 %.2f ms%n",
+                            settings.getMeasuredLatency() / 1000.0, settings.getMeasuredLatency99() / 1000.0));
+                }
+            }
+            JTextArea statsArea = new JTextArea(stats.toString());
+            statsArea.setEditable(false);
+
+            JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+            panel.add(new JLabel("When the queue is full:"));
+            panel.add(policyBox);
+            panel.add(new JLabel("Queue capacity:"));
+            panel.add(capacitySpinner);
+            panel.add(new JLabel("Max rate per controller, Hz (0 - off):"));
+            panel.add(rateSpinner);
+            panel.add(new JLabel("Latency compensation, ms:"));
+            panel.add(compensationSpinner);
+            panel.add(timestampBox);
+            panel.add(new JLabel());
+            JPanel content = new JPanel(new BorderLayout(5, 5));
+            content.add(panel, BorderLayout.NORTH);
+            content.add(statsArea, BorderLayout.CENTER);
+
+            int result = JOptionPane.showConfirmDialog(this, content, "Output settings",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (result != JOptionPane.OK_OPTION) {
+                return;
+            }
+            for (MidiDevice device : selected) {
+                DestinationSettings settings = DestinationSettings.of(device);
+                settings.setOverflowPolicy((OverflowPolicy) policyBox.getSelectedItem());
+                settings.setCapacity((Integer) capacitySpinner.getValue());
+                settings.setMaxRate((Integer) rateSpinner.getValue());
+                settings.setTimestamped(timestampBox.isSelected());
+                settings.setCompensation(Math.round((Double) compensationSpinner.getValue() * 1000));
+            }
+        });
+        menu.add(outputItem);
+
+        //Measuring the latency of selected destinations through a loop back to a source.
+        JMenuItem calibrateItem = new JMenuItem("Calibrate latency...");
+        calibrateItem.addActionListener(e -> {
+            List<MidiDevice> selected = destinations.getSelectedValuesList();
+            if (selected.isEmpty() || sourceModel.getSize() == 0) {
+                return;
+            }
+            JComboBox<MidiDevice> loopBox = new JComboBox<>();
+            for (int i = 0; i < sourceModel.getSize(); i++) {
+                loopBox.addItem(sourceModel.get(i));
+            }
+            loopBox.setRenderer(new MidiDeviceRenderer());
+            JSpinner probesSpinner = new JSpinner(
+                    new SpinnerNumberModel(LatencyCalibrator.DEFAULT_PROBE_COUNT, 1, 1000, 10));
+            JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+            panel.add(new JLabel("Source where the probes come back:"));
+            panel.add(loopBox);
+            panel.add(new JLabel("Probes for each destination:"));
+            panel.add(probesSpinner);
+            int result = JOptionPane.showConfirmDialog(this, panel, "Calibrate latency",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (result != JOptionPane.OK_OPTION) {
+                return;
+            }
+            calibrate((MidiDevice) loopBox.getSelectedItem(), selected, (Integer) probesSpinner.getValue());
+        });
+        menu.add(calibrateItem);
+
+        return menu;
+    }
+
+    /**
+     * Measures the latency of received destinations on a separate thread, so the GUI keeps working,
+     * then keeps the results in the destinations' settings and shows them with the proposed compensations.
+     * @param loopSource  a <code>MidiDevice</code> where the probes come back.
+     * @param toCalibrate  a <code>List</code> of destinations to measure.
+     * @param probeCount  the number of probes for each destination.
+     */
+    private void calibrate(MidiDevice loopSource, List<MidiDevice> toCalibrate, int probeCount) {
+        List<MidiDevice> devices = new ArrayList<>(toCalibrate);
+        Thread calibration = new Thread(() -> {
+            LatencyCalibrator calibrator = new LatencyCalibrator(loopSource, probeCount);
+            List<LatencyMeasurement> measurements = new ArrayList<>();
+            try {
+                for (MidiDevice device : devices) {
+                    measurements.add(calibrator.measure(device));
+                }
+            } catch (MidiUnavailableException | InterruptedException e32) {
+                runLater(() -> JOptionPane.showMessageDialog(this, "Calibration failed: " + e32.getMessage()));
+                return;
+            }
+            runLater(() -> showCalibration(devices, measurements));
+        }, "Latency calibration");
+        calibration.setDaemon(true);
+        calibration.start();
+    }
+
+    /**
+     * Keeps received measurements in the settings of their destinations and shows them together with
+     * the compensations which would make all the destinations sound at the same time. If the user agrees,
+     * the proposed compensations are set to the destinations.
+     * @param devices  the measured destinations.
+     * @param measurements  the <code>LatencyMeasurement</code>s of the destinations, in the same order.
+     */
+    private void showCalibration(List<MidiDevice> devices, List<LatencyMeasurement> measurements) {
+        long[] proposals = LatencyMeasurement.proposeCompensations(measurements);
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < measurements.size(); i++) {
+            LatencyMeasurement measurement = measurements.get(i);
+            report.append(measurement).append("\n");
+            if (measurement.isValid()) {
+                DestinationSettings.of(devices.get(i)).setMeasuredLatency(measurement);
+                report.append(String.format("    proposed compensation: %.1f ms%n", proposals[i] / 1000.0));
+            } else {
+                report.append("    too many probes were lost, check the loop\n");
+            }
+        }
+        JTextArea reportArea = new JTextArea(report.toString());
+        reportArea.setEditable(false);
+        JCheckBox applyBox = new JCheckBox("Set the proposed compensations to the destinations");
+        JPanel content = new JPanel(new BorderLayout(5, 5));
+        content.add(reportArea, BorderLayout.CENTER);
+        content.add(applyBox, BorderLayout.SOUTH);
+        JOptionPane.showMessageDialog(this, content, "Latency calibration", JOptionPane.PLAIN_MESSAGE);
+        if (applyBox.isSelected()) {
+            for (int i = 0; i < proposals.length; i++) {
+                if (proposals[i] >= 0) {
+                    DestinationSettings.of(devices.get(i)).setCompensation(proposals[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles a string from the trigger message JTextField to a {@link TriggerPattern}, a {@link SysexPattern}
+     * or a {@link SequenceTrigger}, then sets this pattern as the trigger of selected <code>MidiTellMatch</code>es
+     * and redraws required GUI components.
+     * @param messageField  a textField where is the pattern to compile.
+     * @param messageTypeModel  a controller of JComboBox where the pattern's StatusByte will be selected.
+     * @param channelSwitch  a JComboBox where the pattern's first channel will be selected
+     */
+    private void compileTriggerPattern(JTextField messageField, MessageSwitchModel messageTypeModel,
+                                       JComboBox<Byte> channelSwitch) {
+        String toCompile = messageField.getText();
+        for (MidiTellMatch tellMatch : midiTellMatches.getSelectedValuesList()) {
+            try {
+                //Sequences and SysEx patterns are checked first, as soon as they look like short message patterns.
+                if (SequenceTrigger.isSequence(toCompile)) {
+                    SequenceTrigger sequence = SequenceTrigger.compile(toCompile, tellMatch.getRadix());
+                    tellMatch.setSequenceTrigger(sequence, toCompile);
+                    messageTypeModel.setSelectedItem(sequence.getType());
+                    channelSwitch.setSelectedItem(sequence.getFirstChannel());
+                    continue;
+                }
+                if (SysexPattern.isPattern(toCompile)) {
+                    tellMatch.setSysexPattern(SysexPattern.compile(toCompile, tellMatch.getRadix()), toCompile);
+                    messageTypeModel.setSelectedItem(StatusByte.SYSTEM_EXCLUSIVE);
+                    continue;
+                }
+                TriggerPattern pattern = TriggerPattern.compile(toCompile, tellMatch.getRadix());
+                tellMatch.setTriggerPattern(pattern, toCompile);
+                messageTypeModel.setSelectedItem(pattern.getType());
+                channelSwitch.setSelectedItem(pattern.getFirstChannel());
+            } catch (InvalidMidiDataException e27) {
+                showInvalidMidiDataDialog(e27);
+                messageField.setText(currentTellMatch.getTriggerString());
+                break;
+            }
+        }
+    }
+
     /**
      *Receives available sources and destinations. In case if CoreMidi4J library is loaded,
      * only it's implementations of MIDI-devices will be in use.
@@ -941,10 +1289,46 @@ public class MainView extends JFrame {
         return listenButton;
     }
 
+    /**
+     * Redraws the GUI elements connected to the trigger of received <code>MidiTellMatch</code> when it has got
+     * a new trigger message, and deselects the listenButton if no one is listening anymore.
+     * @param tellMatch  the <code>MidiTellMatch</code> which trigger is changed.
+     */
+    @Override
+    public void triggerListened(MidiTellMatch tellMatch) {
+        redrawTriggerGUIElements();
+        if (!someOneIsListening()) {
+            listenButton.setSelected(false);
+        }
+    }
+
+    /**
+     * Shows the wrong channel dialog when listening was failed and deselects the listenButton if no one is
+     * listening anymore.
+     * @see #showWrongChannelDialog(byte, byte)
+     */
+    @Override
+    public void listeningFailed(MidiTellMatch tellMatch, byte requiredChannel, byte detectedChannel) {
+        showWrongChannelDialog(requiredChannel, detectedChannel);
+        if (!someOneIsListening()) {
+            listenButton.setSelected(false);
+        }
+    }
+
+    /**
+     * Runs received task on the Event Dispatch Thread.
+     * @param task  a <code>Runnable</code> to run.
+     */
+    @Override
+    public void runLater(Runnable task) {
+        SwingUtilities.invokeLater(task);
+    }
+
     /**
      * Returns the list of existing sources.
      * @return an <code>ArrayList</code> of existing sources.
      */
+    @Override
     public ArrayList<MidiDevice> getSources() {
         ArrayList<MidiDevice> sources = new ArrayList<>();
         for (int i = 0; i < sourceModel.size(); i++) {
@@ -956,6 +1340,7 @@ public class MainView extends JFrame {
      * Returns the list of existing destinations.
      * @return an <code>ArrayList</code> of existing destinations.
      */
+    @Override
     public ArrayList<MidiDevice> getDestinations() {
         ArrayList<MidiDevice> destinations = new ArrayList<>();
         for (int i = 0; i < destModel.size(); i++) {
@@ -1028,6 +1413,39 @@ public class MainView extends JFrame {
         JOptionPane.showMessageDialog(this,exception);
     }
 
+    /**
+     * Drains the failures reported by the MIDI threads and shows them in a message together with the failure
+     * counts of the <code>MidiTellMatch</code>es. Failures reported while the message is shown are kept in the
+     * queue until it's closed.
+     * @see RoutingErrors
+     */
+    private void showRoutingErrors() {
+        if (isShowingErrors) {
+            return;
+        }
+        List<RoutingError> errors = RoutingErrors.drain();
+        int dropped = RoutingErrors.takeDropped();
+        if (errors.isEmpty() && dropped == 0) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("Some messages were not sent:\n");
+        for (int i = 0; i < errors.size() && i < ERRORS_SHOWN; i++) {
+            text.append(errors.get(i)).append("\n");
+        }
+        if (errors.size() > ERRORS_SHOWN || dropped > 0) {
+            text.append("...and ").append(Math.max(0, errors.size() - ERRORS_SHOWN) + dropped).append(" more\n");
+        }
+        for (MidiTellMatch tellMatch : getAllTellMatches()) {
+            if (tellMatch.getFailureCount() > 0) {
+                text.append("\n").append(tellMatch.getName()).append(" failed ")
+                        .append(tellMatch.getFailureCount()).append(" times");
+            }
+        }
+        isShowingErrors = true;
+        JOptionPane.showMessageDialog(this, String.valueOf(text), "Routing errors", JOptionPane.WARNING_MESSAGE);
+        isShowingErrors = false;
+    }
+
     /**
      * Shows a message which says that no sources and/or destinations detected in the system.
      */
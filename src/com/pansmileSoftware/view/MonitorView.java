@@ -1,16 +1,22 @@
 package com.pansmileSoftware.view;
 
 import com.pansmileSoftware.controller.MidiMonitor;
+import com.pansmileSoftware.controller.TempoTracker;
 import com.pansmileSoftware.model.MonitorTableModel;
 import com.pansmileSoftware.model.RadixSwitchModel;
 
 import javax.swing.*;
 import java.awt.event.*;
+import java.io.IOException;
 
 /**
  * This is the GUI form for MIDI-monitor module.
  */
 public class MonitorView extends JFrame {
+    /**The title of the monitor's window without the tempo.*/
+    private static final String TITLE = "MIDI MonitorView";
+    /**The period of updating the detected tempo in the title, in milliseconds.*/
+    private static final int TEMPO_UPDATE_PERIOD = 500;
     private JTable monitorTable;
     private JPanel monitorPanel;
     private JButton clearButton;
@@ -21,13 +27,14 @@ public class MonitorView extends JFrame {
     private MonitorTableModel model;
     private MidiMonitor monitor;
     private MainView owner;
+    private Timer tempoTimer;
 
     /**
      * Initializes the monitor's GUI.
      * @param owner  a <code>MainView</code> which owns current <code>MonitorView</code>.
      */
     public MonitorView(MainView owner){
-        super("MIDI MonitorView");
+        super(TITLE);
         setContentPane(monitorPanel);
         setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
 
@@ -44,6 +51,8 @@ public class MonitorView extends JFrame {
 
             @Override
             public void windowClosing(WindowEvent e) {
+                tempoTimer.stop();
+                model.stop();
                 monitor.dispose();
                 owner.getMonitorList().remove(monitor);
             }
@@ -103,17 +112,9 @@ public class MonitorView extends JFrame {
 
         //Setting default value of maxMemorySpinner.
         maxMemorySpinner.setValue(1000);
-        //Listening to the changes in maxMemorySpinner, sending it's value to the MonitorTable's model
-        //and removing excess rows from the table.
-        maxMemorySpinner.addChangeListener(e -> {
-            model.setMaxRowCount((int) maxMemorySpinner.getValue());
-            int removeCount = model.getRowCount() - (int) maxMemorySpinner.getValue();
-            if (removeCount > 0) {
-                for (int i = 0; i < removeCount; i++) {
-                    model.remove(0);
-                }
-            }
-        });
+        //Listening to the changes in maxMemorySpinner and sending it's value to the MonitorTable's model,
+        //which removes excess rows from the table itself.
+        maxMemorySpinner.addChangeListener(e -> model.setMaxRowCount((int) maxMemorySpinner.getValue()));
         //Initializing the radixSwitch and it's model.
         RadixSwitchModel radixModel = new RadixSwitchModel(radixSwitch);
         radixSwitch.setModel(radixModel);
@@ -131,11 +132,60 @@ public class MonitorView extends JFrame {
                 monitor.setShowMessageInfo(showMessageInfoCheckBox.isSelected()));
         //Clearing the monitorTable.
         clearButton.addActionListener(e -> model.clear());
+        //Changing the refresh rate of the monitorTable from it's context menu.
+        JPopupMenu tableMenu = new JPopupMenu();
+        JMenuItem refreshItem = new JMenuItem("Refresh rate...");
+        refreshItem.addActionListener(e -> {
+            JSpinner rateSpinner = new JSpinner(new SpinnerNumberModel(model.getRefreshRate(), 1, 120, 5));
+            int result = JOptionPane.showConfirmDialog(this, rateSpinner, "Refreshes per second",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (result == JOptionPane.OK_OPTION) {
+                model.setRefreshRate((Integer) rateSpinner.getValue());
+            }
+        });
+        tableMenu.add(refreshItem);
+        //Recording the messages to disk, so the table keeps hours of traffic.
+        JCheckBoxMenuItem recordItem = new JCheckBoxMenuItem("Record to disk");
+        recordItem.addActionListener(e -> {
+            try {
+                model.setRecordingToDisk(recordItem.isSelected());
+            } catch (IOException e1) {
+                recordItem.setSelected(false);
+                JOptionPane.showMessageDialog(this, "Can't record to disk: " + e1.getMessage());
+            }
+        });
+        tableMenu.add(recordItem);
+        monitorTable.setComponentPopupMenu(tableMenu);
+        //Showing the tempo detected from the Timing Clock of the sources in the title.
+        tempoTimer = new Timer(TEMPO_UPDATE_PERIOD, e -> showTempo());
+        tempoTimer.start();
 
         pack();
         setVisible(true);
     }
 
+    /**
+     * Adds the tempo of each source which is receiving Timing Clock to the title of current
+     * <code>MonitorView</code>, the size of the recording on disk and the number of messages which came too fast
+     * to be shown.
+     */
+    private void showTempo() {
+        StringBuilder title = new StringBuilder(TITLE);
+        for (TempoTracker tempo : TempoTracker.getRunning()) {
+            title.append(" - ").append(tempo);
+        }
+        if (model.isRecordingToDisk()) {
+            title.append(" - recording to disk, ").append(model.getDiskSize() >> 20).append(" MB");
+        }
+        int dropped = model.takeDropped();
+        if (dropped > 0) {
+            title.append(" - ").append(dropped).append(" messages not shown");
+        }
+        if (!title.toString().equals(getTitle())) {
+            setTitle(title.toString());
+        }
+    }
+
     /**
      * Returns the model of monitorTable <code>JTable</code>.
      * @return the model of monitorTable
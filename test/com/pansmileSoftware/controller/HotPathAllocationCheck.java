@@ -0,0 +1,111 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * This class checks that routing incoming short messages allocates nothing. A <code>MidiTellMatch</code> is
+ * connected to a stub source and a stub destination, then the <code>IncomingMessageReceiver</code> of the source
+ * is warmed up with matching and non-matching <code>ShortMessage</code>s and with Timing Clock at a steady
+ * interval, and the bytes allocated by the current thread are compared before and after routing the same messages
+ * many times. Matched messages go all the way to the destination's output queue. The clocks are timestamped
+ * in the clock of the source, so their interval is steady no matter how fast the messages are sent.
+ * The check exits with a non-zero status if anything was allocated, so it could be run from a build script:
+ * <pre>java -cp out com.pansmileSoftware.controller.HotPathAllocationCheck</pre>
+ * @see IncomingMessageReceiver#send(MidiMessage, long)
+ * @see MidiTellMatch#trySend(int, long)
+ * @see TempoTracker#clock(long)
+ */
+public class HotPathAllocationCheck {
+    //The number of messages sent to warm up the JIT compiler.
+    private static final int WARM_UP = 200_000;
+    //The interval between Timing Clock messages in microseconds, which is 2500 BPM.
+    private static final long CLOCK_INTERVAL = 1000;
+    //The number of clocks sent to warm up, and the number of clocks which are measured.
+    private static final int WARM_UP_CLOCKS = 500;
+    private static final int CLOCKS = 200;
+    //The number of other messages sent after each clock.
+    private static final int MESSAGES_PER_CLOCK = 500;
+
+    private static long nextClock;
+
+    public static void main(String[] args) throws Exception {
+        StubDevice source = new StubDevice("Stub source");
+        StubDevice destination = new StubDevice("Stub destination");
+        MidiTellMatch tellMatch = new MidiTellMatch(source, new ArrayList<>(Collections.singletonList(destination)),
+                new StubOwner(), (byte) 16);
+        tellMatch.setTriggerMessage(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100));
+        tellMatch.setOutgoingMessage(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 7, 127));
+        Receiver router = source.getRouter();
+
+        //The trigger, a note which is not the trigger, the trigger on another channel and another status.
+        ShortMessage[] messages = {
+                new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100),
+                new ShortMessage(ShortMessage.NOTE_ON, 0, 61, 100),
+                new ShortMessage(ShortMessage.NOTE_ON, 1, 60, 100),
+                new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 1, 64)
+        };
+        ShortMessage clock = new ShortMessage(ShortMessage.TIMING_CLOCK);
+        for (int i = 0; i < WARM_UP; i++) {
+            router.send(messages[i % messages.length], -1);
+        }
+        nextClock = System.nanoTime() / 1000;
+        route(router, clock, messages, WARM_UP_CLOCKS, MESSAGES_PER_CLOCK / 10);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        //The bean allocates a little itself, so it's measured the same way without any messages.
+        threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+        before = threads.getThreadAllocatedBytes(thread);
+        route(router, clock, messages, CLOCKS, MESSAGES_PER_CLOCK);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        long sent = tellMatch.getSentCount();
+        long quarter = TempoTracker.of(source).getQuarterNanos();
+        //Waiting for the destination's writer thread to write the last messages.
+        Thread.sleep(100);
+        long written = ReceiverPool.get(destination).getOutput().getWritten();
+        int calls = CLOCKS * (MESSAGES_PER_CLOCK + 1);
+        if (sent < WARM_UP / messages.length) {
+            fail("the trigger was matched " + sent + " times");
+        }
+        if (Math.abs(quarter - CLOCK_INTERVAL * 1000 * TempoTracker.CLOCKS_PER_QUARTER) > quarter / 100) {
+            fail("the tempo was measured as a quarter note of " + quarter + " ns");
+        }
+        if (written == 0) {
+            fail("nothing was written to the destination");
+        }
+        if (allocated > 0) {
+            fail(allocated + " bytes allocated by " + calls + " incoming messages");
+        }
+        System.out.println("OK: " + calls + " incoming messages routed without allocation, "
+                + written + " written to the destination");
+        System.exit(0);
+    }
+
+    //Sends received number of clocks at a steady interval, and received number of other messages after each one.
+    private static void route(Receiver router, ShortMessage clock, ShortMessage[] messages, int clocks,
+                              int messagesPerClock) {
+        for (int c = 0; c < clocks; c++) {
+            //The clock is sent when it's time comes, with the time it was due at as it's timestamp.
+            while (System.nanoTime() / 1000 < nextClock) {
+                Thread.yield();
+            }
+            router.send(clock, nextClock);
+            nextClock += CLOCK_INTERVAL;
+            for (int i = 0; i < messagesPerClock; i++) {
+                router.send(messages[i % messages.length], -1);
+            }
+        }
+    }
+
+    private static void fail(String description) {
+        System.err.println("FAILED: " + description);
+        System.exit(1);
+    }
+}
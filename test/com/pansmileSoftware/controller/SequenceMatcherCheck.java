@@ -0,0 +1,112 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class checks the <code>SequenceMatcher</code> which matches incoming short messages against the sequence
+ * triggers of a source. <code>MidiTellMatch</code>es with sequences, timing windows and held note conditions are
+ * connected to a stub source, then timed messages are sent to the source's <code>IncomingMessageReceiver</code>
+ * and the <code>MidiTellMatch</code>es which were triggered are compared with the expected ones. The messages are
+ * timestamped in the clock of the source, so the time between them doesn't depend on the speed of the check.
+ * The check exits with a non-zero status if any of them differs:
+ * <pre>java -cp out com.pansmileSoftware.controller.SequenceMatcherCheck</pre>
+ * @see SequenceMatcher
+ * @see SequenceTrigger
+ */
+public class SequenceMatcherCheck {
+    private static final byte RADIX = 16;
+
+    private static final Map<String, MidiTellMatch> TELL_MATCHES = new LinkedHashMap<>();
+    private static StubDevice source;
+    private static IncomingMessageReceiver router;
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        source = new StubDevice("Stub sequence source");
+        add("pair", "90 3c * -> 90 3e * within 300");
+        add("pedal", "b0 40 >3f while held 3c");
+        add("three", "b0 01 * -> b0 02 * -> b0 03 *");
+        router = (IncomingMessageReceiver) source.getRouter();
+
+        //Each message is written with the time in milliseconds before now when it has happened.
+        //Each check releases the notes it holds, so the next one starts without held notes.
+        check("in order within the window", "90 3c 64 @900, 90 3e 64 @800, 80 3c 00 @1", "pair");
+        check("too slow for the window", "90 3c 64 @900, 90 3e 64 @500, 80 3c 00 @1");
+        check("started over after expiring", "90 3c 64 @900, 90 3c 64 @500, 90 3e 64 @400, 80 3c 00 @1",
+                "pair");
+        check("in the wrong order", "90 3e 64 @900, 90 3c 64 @800, 80 3c 00 @1");
+        check("on another channel", "90 3c 64 @900, 91 3e 64 @800, 80 3c 00 @1");
+        check("without the held note", "b0 40 7f @10");
+        check("while the note is held", "90 3c 64 @20, b0 40 7f @10, 80 3c 00 @5", "pedal");
+        check("after the note is released", "90 3c 64 @30, 80 3c 00 @20, b0 40 7f @10");
+        check("with the value out of range", "90 3c 64 @30, b0 40 20 @20, 80 3c 00 @10");
+        check("unlimited with other messages between",
+                "b0 01 10 @900, 90 40 64 @700, b0 02 10 @500, b0 07 10 @300, b0 03 10 @10", "three");
+
+        //Rebuilding the matcher forgets the started sequences, but keeps the held notes.
+        send("90 3c 64", 900);
+        router.reindex();
+        check("reindexed in the middle", "90 3e 64 @800, 80 3c 00 @1");
+        send("90 3c 64", 20);
+        router.reindex();
+        check("held through reindexing", "b0 40 7f @10, 80 3c 00 @5", "pedal");
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " sequences were triggered wrongly");
+            System.exit(1);
+        }
+        System.out.println("OK: all sequence triggers matched as expected");
+        System.exit(0);
+    }
+
+    //Connects a MidiTellMatch with received sequence trigger to the source.
+    private static void add(String name, String sequence) throws Exception {
+        MidiTellMatch tellMatch = new MidiTellMatch(source, new ArrayList<>(), new StubOwner(), RADIX);
+        tellMatch.setSequenceTrigger(SequenceTrigger.compile(sequence, RADIX), sequence);
+        tellMatch.setOutgoingMessage(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 7, 127));
+        tellMatch.setName(name);
+        TELL_MATCHES.put(name, tellMatch);
+    }
+
+    //Sends received message to the source, timestamped received number of milliseconds ago.
+    private static void send(String message, long ageMillis) throws InvalidMidiDataException {
+        String[] tokens = message.split(" ");
+        ShortMessage shortMessage = new ShortMessage(Integer.parseInt(tokens[0], RADIX),
+                Integer.parseInt(tokens[1], RADIX), Integer.parseInt(tokens[2], RADIX));
+        router.send(shortMessage, source.getMicrosecondPosition() - ageMillis * 1000);
+    }
+
+    /**
+     * Starts all sequences over, sends received timed messages to the source and compares the triggered
+     * <code>MidiTellMatch</code>es with the expected ones.
+     */
+    private static void check(String description, String messages, String... expected)
+            throws InvalidMidiDataException {
+        Map<String, Long> before = new LinkedHashMap<>();
+        for (Map.Entry<String, MidiTellMatch> entry : TELL_MATCHES.entrySet()) {
+            before.put(entry.getKey(), entry.getValue().getSentCount());
+        }
+        for (String timed : messages.split(",\\s*")) {
+            int split = timed.indexOf(" @");
+            send(timed.substring(0, split), Long.parseLong(timed.substring(split + 2)));
+        }
+
+        StringBuilder triggered = new StringBuilder();
+        for (Map.Entry<String, MidiTellMatch> entry : TELL_MATCHES.entrySet()) {
+            long sent = entry.getValue().getSentCount() - before.get(entry.getKey());
+            if (sent > 0) {
+                triggered.append(entry.getKey()).append(sent > 1 ? " x" + sent : "").append(", ");
+            }
+        }
+        String actual = triggered.length() > 0 ? triggered.substring(0, triggered.length() - 2) : "";
+        String wanted = String.join(", ", expected);
+        if (!actual.equals(wanted)) {
+            failures++;
+            System.err.println(description + ": expected [" + wanted + "], triggered [" + actual + "]");
+        }
+        router.reindex();
+    }
+}
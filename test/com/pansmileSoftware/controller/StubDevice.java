@@ -0,0 +1,109 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.*;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is a MIDI-device for the checks, which may be used both as a source and as a destination.
+ * It keeps the receiver connected to it's transmitter, so a check could send incoming messages to it, and ignores
+ * the messages sent to it. It's clock is the <code>System.nanoTime()</code> in microseconds.
+ */
+class StubDevice implements MidiDevice {
+    private final StubTransmitter transmitter = new StubTransmitter();
+    private final Info info;
+    private volatile boolean isOpen;
+
+    StubDevice(String name) {
+        info = new Info(name, "pansmileSoftware", "A stub device", "1.0") {};
+    }
+
+    /**
+     * Returns the receiver connected to the device's transmitter, which gets the incoming messages.
+     * @return the <code>Receiver</code> of the source, or null if nothing is connected.
+     */
+    Receiver getRouter() {
+        return transmitter.receiver;
+    }
+
+    @Override
+    public Info getDeviceInfo() {
+        return info;
+    }
+
+    @Override
+    public void open() {
+        isOpen = true;
+    }
+
+    @Override
+    public void close() {
+        isOpen = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return System.nanoTime() / 1000;
+    }
+
+    @Override
+    public int getMaxReceivers() {
+        return -1;
+    }
+
+    @Override
+    public int getMaxTransmitters() {
+        return -1;
+    }
+
+    @Override
+    public Receiver getReceiver() {
+        return new Receiver() {
+            @Override
+            public void send(MidiMessage message, long timeStamp) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public List<Receiver> getReceivers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Transmitter getTransmitter() {
+        return transmitter;
+    }
+
+    @Override
+    public List<Transmitter> getTransmitters() {
+        return Collections.singletonList(transmitter);
+    }
+
+    private static class StubTransmitter implements Transmitter {
+        private Receiver receiver;
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public Receiver getReceiver() {
+            return receiver;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.MidiDevice;
+import java.util.ArrayList;
+
+/**
+ * This class is an owner of <code>MidiTellMatch</code>es for the checks. It has no devices, ignores all the events
+ * and runs the handed over tasks at once.
+ */
+class StubOwner implements TellMatchListener {
+    @Override
+    public ArrayList<MidiDevice> getSources() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public ArrayList<MidiDevice> getDestinations() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void triggerListened(MidiTellMatch tellMatch) {
+    }
+
+    @Override
+    public void listeningFailed(MidiTellMatch tellMatch, byte requiredChannel, byte detectedChannel) {
+    }
+
+    @Override
+    public void runLater(Runnable task) {
+        task.run();
+    }
+}
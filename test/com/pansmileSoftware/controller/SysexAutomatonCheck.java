@@ -0,0 +1,89 @@
+package com.pansmileSoftware.controller;
+
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class checks the <code>SysexAutomaton</code> which matches incoming SysEx messages against all SysEx
+ * triggers of a source at once. <code>MidiTellMatch</code>es with exact patterns, wildcards and overlapping
+ * prefixes are connected to a stub source, SysEx messages are sent to the source's
+ * <code>IncomingMessageReceiver</code>, and the <code>MidiTellMatch</code>es which were triggered by each message
+ * are compared with the expected ones. The check exits with a non-zero status if any of them differs:
+ * <pre>java -cp out com.pansmileSoftware.controller.SysexAutomatonCheck</pre>
+ * @see SysexAutomaton
+ * @see SysexPattern
+ */
+public class SysexAutomatonCheck {
+    private static final byte RADIX = 16;
+
+    private static final Map<String, MidiTellMatch> TELL_MATCHES = new LinkedHashMap<>();
+    private static Receiver router;
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        StubDevice source = new StubDevice("Stub SysEx source");
+        add(source, "exact", "f0 43 10 4c f7");
+        add(source, "same exact", "f0 43 10 4c f7");
+        add(source, "wildcard", "f0 43 * 4c f7");
+        add(source, "prefix", "f0 43 ...");
+        add(source, "longer prefix", "f0 43 10 ...");
+        add(source, "two wildcards", "f0 7e * * f7");
+        router = source.getRouter();
+
+        check("f0 43 10 4c f7", "exact", "same exact", "wildcard", "prefix", "longer prefix");
+        check("f0 43 20 4c f7", "wildcard", "prefix");
+        check("f0 43 10 4c 00 f7", "prefix", "longer prefix");
+        check("f0 43 10 f7", "prefix", "longer prefix");
+        check("f0 43 f7", "prefix");
+        check("f0 7e 01 02 f7", "two wildcards");
+        check("f0 7e 01 f7");
+        check("f0 7e 01 02 03 f7");
+        check("f0 41 10 4c f7");
+
+        if (failures > 0) {
+            System.err.println("FAILED: " + failures + " messages triggered wrong MidiTellMatches");
+            System.exit(1);
+        }
+        System.out.println("OK: all SysEx triggers matched as expected");
+        System.exit(0);
+    }
+
+    //Connects a MidiTellMatch with received SysEx trigger to the source.
+    private static void add(MidiDevice source, String name, String pattern) throws Exception {
+        MidiTellMatch tellMatch = new MidiTellMatch(source, new ArrayList<>(), new StubOwner(), RADIX);
+        tellMatch.setSysexPattern(SysexPattern.compile(pattern, RADIX), pattern);
+        tellMatch.setOutgoingMessage(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 7, 127));
+        tellMatch.setName(name);
+        TELL_MATCHES.put(name, tellMatch);
+    }
+
+    //Sends received message to the source and compares the triggered MidiTellMatches with the expected ones.
+    private static void check(String message, String... expected) throws InvalidMidiDataException {
+        Map<String, Long> before = new LinkedHashMap<>();
+        for (Map.Entry<String, MidiTellMatch> entry : TELL_MATCHES.entrySet()) {
+            before.put(entry.getKey(), entry.getValue().getSentCount());
+        }
+        String[] tokens = message.split(" ");
+        byte[] data = new byte[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            data[i] = (byte) Integer.parseInt(tokens[i], RADIX);
+        }
+        router.send(new SysexMessage(data, data.length), -1);
+
+        StringBuilder triggered = new StringBuilder();
+        for (Map.Entry<String, MidiTellMatch> entry : TELL_MATCHES.entrySet()) {
+            long sent = entry.getValue().getSentCount() - before.get(entry.getKey());
+            if (sent > 0) {
+                triggered.append(entry.getKey()).append(sent > 1 ? " x" + sent : "").append(", ");
+            }
+        }
+        String actual = triggered.length() > 0 ? triggered.substring(0, triggered.length() - 2) : "";
+        String wanted = String.join(", ", expected);
+        if (!actual.equals(wanted)) {
+            failures++;
+            System.err.println(message + ": expected [" + wanted + "], triggered [" + actual + "]");
+        }
+    }
+}